@@ -0,0 +1,85 @@
+package com.y4vyq.partnerplugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 到期队列与冷却表的记账耗时
+ * tick 模拟插件每 tick 的到期检查：时钟前进一格，取出到期的主人并立即为其重新计时，
+ * 使队列规模保持在 partners 左右
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookkeepingBenchmark {
+
+    // 伙伴寿命(tick)，即默认的 300 秒
+    private static final int LIFETIME = 6000;
+
+    @Param({"1000", "10000"})
+    public int partners;
+
+    private ExpiryQueue expiry;
+    private CooldownMap cooldowns;
+    private UUID[] owners;
+    private int now;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        expiry = new ExpiryQueue();
+        cooldowns = new CooldownMap();
+        owners = new UUID[partners];
+        for (int i = 0; i < partners; i++) {
+            owners[i] = UUID.randomUUID();
+            // 到期时间均匀分布在一个寿命周期内
+            expiry.schedule(owners[i], i * LIFETIME / partners);
+        }
+        now = 0;
+    }
+
+    @Benchmark
+    public int tick() {
+        int tick = ++now;
+        expiry.expire(tick, owner -> expiry.schedule(owner, tick + LIFETIME));
+        return expiry.size();
+    }
+
+    @Benchmark
+    public void reschedule() {
+        expiry.schedule(owners[next()], now + LIFETIME);
+    }
+
+    @Benchmark
+    public int cooldownCheckAndStart() {
+        UUID owner = owners[next()];
+        int left = cooldowns.remaining(owner, ++now);
+        if (left == 0) {
+            cooldowns.start(owner, now, 60);
+        }
+        return left;
+    }
+
+    private int next() {
+        int index = cursor++;
+        if (cursor == partners) {
+            cursor = 0;
+        }
+        return index;
+    }
+}
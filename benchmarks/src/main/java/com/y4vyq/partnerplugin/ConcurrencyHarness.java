@@ -0,0 +1,242 @@
+package com.y4vyq.partnerplugin;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 多线程并发测试
+ * 在 {@link SimServer} 上用 {@link ThreadedScheduler} 启用真实的插件：玩家操作与事件在玩家所属区域的线程执行，
+ * 插件的实体、区域、全局与异步任务分布在多个线程上。每轮随机执行召唤、隐藏、显示、同世界与跨世界传送和下线，
+ * 伙伴寿命很短，期间不断到期。每隔若干轮等待所有任务完成后检查：
+ * 存活实体数、登记的伙伴数与身份索引大小一致且不超过在线玩家数；最后所有玩家下线后三者都应为 0，
+ * 且任务中没有抛出异常。任一检查失败时以非零状态退出：
+ * <pre>java -cp target/benchmarks.jar com.y4vyq.partnerplugin.ConcurrencyHarness players=200 rounds=200</pre>
+ */
+public final class ConcurrencyHarness {
+
+    private static final Command PARTNER_COMMAND = new Command("partner") {
+        @Override
+        public boolean execute(CommandSender sender, String label, String[] args) {
+            return false;
+        }
+    };
+    private static final String[] SUMMON = new String[0];
+    private static final String[] HIDE = {"hide"};
+    private static final String[] SHOW = {"show"};
+
+    private final int players;
+    private final int rounds;
+    private final int checkEvery;
+    private final Random random;
+    private final SimServer sim = new SimServer();
+    private final ThreadedScheduler scheduler;
+    private final List<World> worlds = new ArrayList<>();
+    // 只在测试主线程访问
+    private final List<Player> online = new ArrayList<>();
+    private final List<String> offline = new ArrayList<>();
+    private final List<String> problems = new ArrayList<>();
+    private PartnerPlugin plugin;
+
+    private ConcurrencyHarness(int players, int rounds, int checkEvery, int threads, long seed) {
+        this.players = players;
+        this.rounds = rounds;
+        this.checkEvery = checkEvery;
+        this.random = new Random(seed);
+        this.scheduler = new ThreadedScheduler(threads, 2);
+        sim.setRegionOwner(scheduler::owns);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Logger.getLogger("").setLevel(Level.WARNING);
+        int players = 200;
+        int rounds = 200;
+        int checkEvery = 20;
+        int threads = 4;
+        long seed = 1;
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                throw new IllegalArgumentException("参数格式应为 key=value: " + arg);
+            }
+            String value = arg.substring(split + 1);
+            switch (arg.substring(0, split)) {
+                case "players": players = Integer.parseInt(value); break;
+                case "rounds": rounds = Integer.parseInt(value); break;
+                case "check": checkEvery = Math.max(1, Integer.parseInt(value)); break;
+                case "threads": threads = Math.max(2, Integer.parseInt(value)); break;
+                case "seed": seed = Long.parseLong(value); break;
+                default:
+                    throw new IllegalArgumentException("未知参数: " + arg);
+            }
+        }
+        boolean passed = new ConcurrencyHarness(players, rounds, checkEvery, threads, seed).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        File dataFolder = Files.createTempDirectory("partner-concurrency").toFile();
+        writeConfig(dataFolder);
+        plugin = sim.load(dataFolder, scheduler);
+        plugin.onEnable();
+
+        worlds.add(sim.world("world"));
+        worlds.add(sim.world("world_nether"));
+        for (int i = 0; i < players; i++) {
+            join("player" + i);
+        }
+
+        for (int round = 1; round <= rounds; round++) {
+            for (Player player : new ArrayList<>(online)) {
+                act(player);
+            }
+            // 给到期、跟随与交接留出几个 tick
+            Thread.sleep(random.nextInt(10));
+
+            if (round % checkEvery == 0 || round == rounds) {
+                settle("第 " + round + " 轮");
+                check("第 " + round + " 轮", online.size());
+                for (String name : offline) {
+                    join(name);
+                }
+                offline.clear();
+            }
+        }
+
+        // 全部下线后不应留下任何伙伴
+        for (Player player : new ArrayList<>(online)) {
+            quit(player);
+        }
+        settle("全部下线");
+        check("全部下线", 0);
+        if (sim.liveEntities() != 0) {
+            problems.add("全部下线后仍有 " + sim.liveEntities() + " 个伙伴实体");
+        }
+
+        plugin.onDisable();
+        scheduler.close();
+        for (Throwable failure : scheduler.failures()) {
+            problems.add("任务抛出异常: " + failure);
+            failure.printStackTrace();
+        }
+
+        System.out.printf(Locale.ROOT, "players=%d rounds=%d ticks=%d problems=%d%n",
+                players, rounds, scheduler.currentTick(), problems.size());
+        for (String problem : problems) {
+            System.out.println("  " + problem);
+        }
+        return problems.isEmpty();
+    }
+
+    /**
+     * 为玩家随机安排一个操作，在玩家所属区域的线程执行
+     */
+    private void act(Player player) {
+        int roll = random.nextInt(100);
+        if (roll < 30) {
+            scheduler.act(player, () -> command(player, SUMMON));
+        } else if (roll < 45) {
+            scheduler.act(player, () -> command(player, HIDE));
+        } else if (roll < 60) {
+            scheduler.act(player, () -> command(player, SHOW));
+        } else if (roll < 90) {
+            Location to = destination(player);
+            scheduler.act(player, () -> {
+                Location from = player.getLocation();
+                plugin.onPlayerTeleport(new PlayerTeleportEvent(player, from, to,
+                        PlayerTeleportEvent.TeleportCause.PLUGIN));
+                sim.move(player, to);
+            });
+        } else if (roll < 95) {
+            quit(player);
+        }
+    }
+
+    private void command(Player player, String[] args) {
+        plugin.onCommand(player, PARTNER_COMMAND, "partner", args);
+    }
+
+    private Location destination(Player player) {
+        if (random.nextInt(4) == 0) {
+            World target = worlds.get(random.nextInt(worlds.size()));
+            return new Location(target, coordinate(), SimServer.GROUND_Y, coordinate());
+        }
+        // 同世界传送，距离足以跨越模拟区域
+        Location from = player.getLocation();
+        return new Location(from.getWorld(), from.getX() + (random.nextDouble() * 2 - 1) * 300, SimServer.GROUND_Y,
+                from.getZ() + (random.nextDouble() * 2 - 1) * 300);
+    }
+
+    private void join(String name) {
+        World world = worlds.get(random.nextInt(worlds.size()));
+        Player player = sim.join(name, new Location(world, coordinate(), SimServer.GROUND_Y, coordinate()));
+        online.add(player);
+        scheduler.act(player, () -> plugin.onPlayerJoin(new PlayerJoinEvent(player, Component.empty())));
+    }
+
+    /**
+     * 下线并在下一次检查后重新上线；重新上线前先等待下线事件处理完
+     */
+    private void quit(Player player) {
+        online.remove(player);
+        offline.add(player.getName());
+        scheduler.act(player, () -> {
+            plugin.onPlayerQuit(new PlayerQuitEvent(player, Component.empty(),
+                    PlayerQuitEvent.QuitReason.DISCONNECTED));
+            sim.quit(player);
+        });
+    }
+
+    private double coordinate() {
+        return (random.nextDouble() * 2 - 1) * 2000;
+    }
+
+    private void settle(String stage) throws InterruptedException {
+        if (!scheduler.awaitIdle(30_000)) {
+            problems.add(stage + ": 30 秒内任务仍未执行完");
+        }
+    }
+
+    /**
+     * 所有任务完成后：存活实体、登记的伙伴与身份索引三者一致，且每名在线玩家至多一个伙伴
+     */
+    private void check(String stage, int onlinePlayers) {
+        int entities = sim.liveEntities();
+        int registered = plugin.getPartnerService().getPartnerCount();
+        int indexed = plugin.getPartnerIndex().size();
+        if (entities != registered || registered != indexed) {
+            problems.add(String.format(Locale.ROOT, "%s: 存活实体 %d、登记伙伴 %d、身份索引 %d 不一致",
+                    stage, entities, registered, indexed));
+        }
+        if (registered > onlinePlayers) {
+            problems.add(String.format(Locale.ROOT, "%s: 登记伙伴 %d 多于在线玩家 %d", stage, registered, onlinePlayers));
+        }
+    }
+
+    /**
+     * 默认配置，缩短伙伴寿命并取消冷却，使到期与重复操作在测试中频繁发生
+     */
+    private static void writeConfig(File dataFolder) throws Exception {
+        String config = new String(Files.readAllBytes(Stubs.resource("config.yml").toPath()), StandardCharsets.UTF_8)
+                .replace("default-duration: 300", "default-duration: 1")
+                .replace("teleport-cooldown: 3", "teleport-cooldown: 0")
+                .replace("summon-cooldown: 5", "summon-cooldown: 0");
+        Files.write(new File(dataFolder, "config.yml").toPath(), config.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,74 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 配置访问耗时：热路径读取编译后快照的字段，与按路径查询 YamlConfiguration 对比；
+ * load 为一次完整重载（读盘、解析、校验）的耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigBenchmark {
+
+    private File configFile;
+    private File helpFile;
+    private File effectsFile;
+    private PartnerConfig settings;
+    private YamlConfiguration yaml;
+    private final Logger logger = Logger.getLogger("PartnerPlugin");
+
+    @Setup
+    public void setup() {
+        configFile = Stubs.resource("config.yml");
+        helpFile = Stubs.resource("help.yml");
+        effectsFile = Stubs.resource("effects.yml");
+        settings = PartnerConfig.load(configFile, helpFile, effectsFile, logger);
+        yaml = YamlConfiguration.loadConfiguration(configFile);
+    }
+
+    @Benchmark
+    public void compiledFields(Blackhole hole) {
+        PartnerConfig config = settings;
+        hole.consume(config.entityType);
+        hole.consume(config.duration);
+        hole.consume(config.followDistance);
+        hole.consume(config.maxParticlesPerTick);
+        hole.consume(config.summonSound);
+    }
+
+    @Benchmark
+    public void yamlLookups(Blackhole hole) {
+        hole.consume(yaml.getString("partner.entity-type"));
+        hole.consume(yaml.getInt("settings.default-duration"));
+        hole.consume(yaml.getDouble("partner.behaviors.follow-distance"));
+        hole.consume(yaml.getInt("advanced.particle-optimization.max-particles-per-tick"));
+        hole.consume(yaml.getString("effects.summon.sound.type"));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Measurement(iterations = 50)
+    public PartnerConfig load() {
+        return PartnerConfig.load(configFile, helpFile, effectsFile, logger);
+    }
+}
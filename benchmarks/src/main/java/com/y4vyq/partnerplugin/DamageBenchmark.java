@@ -0,0 +1,103 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * onPartnerDamage 的判断耗时
+ * 直接调用插件的事件处理方法(插件在模拟服务端上构造，不执行 onEnable)。
+ * 服务器上绝大多数伤害事件来自非伙伴实体，rejectStranger 即这类事件在插件中花费的全部时间
+ * （身份索引查找加上 DAMAGE 探针计时）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DamageBenchmark {
+
+    private static final int PROBES = 1024;
+
+    @Param({"100", "10000"})
+    public int partners;
+
+    private PartnerPlugin plugin;
+    private PartnerIndex index;
+    private Entity[] tagged;
+    private Entity[] strangers;
+    private EntityDamageEvent[] taggedEvents;
+    private EntityDamageEvent[] strangerEvents;
+    private int cursor;
+
+    @Setup
+    public void setup() throws Exception {
+        SimServer sim = new SimServer();
+        File dataFolder = Files.createTempDirectory("partner-damage").toFile();
+        dataFolder.deleteOnExit();
+        plugin = sim.load(dataFolder);
+        index = plugin.getPartnerIndex();
+
+        World world = Stubs.world("world");
+        tagged = new Entity[PROBES];
+        strangers = new Entity[PROBES];
+
+        for (int i = 0; i < partners; i++) {
+            Entity entity = Stubs.entity(i, EntityType.FOX, world);
+            index.tag(entity, UUID.randomUUID());
+            if (i < PROBES) {
+                tagged[i] = entity;
+            }
+        }
+        for (int i = partners; i < PROBES; i++) {
+            tagged[i] = tagged[i % partners];
+        }
+        for (int i = 0; i < PROBES; i++) {
+            strangers[i] = Stubs.entity(partners + i, EntityType.ZOMBIE, world);
+        }
+
+        taggedEvents = new EntityDamageEvent[PROBES];
+        strangerEvents = new EntityDamageEvent[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            taggedEvents[i] = new EntityDamageEvent(tagged[i], EntityDamageEvent.DamageCause.CUSTOM, 1.0);
+            strangerEvents[i] = new EntityDamageEvent(strangers[i], EntityDamageEvent.DamageCause.CUSTOM, 1.0);
+        }
+    }
+
+    @Benchmark
+    public EntityDamageEvent rejectStranger() {
+        EntityDamageEvent event = strangerEvents[cursor++ & (PROBES - 1)];
+        plugin.onPartnerDamage(event);
+        return event;
+    }
+
+    @Benchmark
+    public EntityDamageEvent matchPartner() {
+        EntityDamageEvent event = taggedEvents[cursor++ & (PROBES - 1)];
+        plugin.onPartnerDamage(event);
+        return event;
+    }
+
+    @Benchmark
+    public boolean indexOnly() {
+        return index.isPartner(strangers[cursor++ & (PROBES - 1)]);
+    }
+}
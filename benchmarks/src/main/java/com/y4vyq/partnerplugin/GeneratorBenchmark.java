@@ -0,0 +1,64 @@
+package com.y4vyq.partnerplugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内置粒子生成器写入一帧的耗时
+ * 对应 EffectEngine 每 tick 对每个效果调用一次 writeFrame
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    @Param({"default", "spiral", "circle", "custom", "vortex", "ripple"})
+    public String generator;
+
+    private PartnerPlugin.FrameGenerator frames;
+    private final ParticleBuffer buffer = new ParticleBuffer();
+    private int tick;
+
+    @Setup
+    public void setup() {
+        switch (generator) {
+            case "spiral":
+                frames = new PartnerPlugin.SpiralParticleGenerator();
+                break;
+            case "circle":
+                frames = new PartnerPlugin.CircleParticleGenerator();
+                break;
+            case "custom":
+                frames = new PartnerPlugin.ConfigurableParticleGenerator(Stubs.defaultConfig());
+                break;
+            case "vortex":
+            case "ripple":
+                frames = Stubs.defaultConfig().effects.get(generator);
+                break;
+            default:
+                frames = new PartnerPlugin.DefaultParticleGenerator();
+                break;
+        }
+    }
+
+    @Benchmark
+    public int writeFrame() {
+        buffer.reset();
+        frames.writeFrame(tick++ & 0xFFFF, buffer);
+        return buffer.size();
+    }
+}
@@ -0,0 +1,337 @@
+package com.y4vyq.partnerplugin;
+
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 无界面负载测试
+ * 在 {@link SimServer} 上启用真实的插件，模拟 N 名玩家按设定频率召唤、隐藏/显示、同世界与跨世界传送、下线后重新上线，
+ * 并在行走中触发跟随。每 tick 统计插件在主线程上花费的时间（命令、事件与同步任务）、已安排的任务数、
+ * 存活实体数与粒子发送次数，用于验证插件在 1k–10k 玩家下的扩展性。
+ * 参数以 key=value 形式传入，频率单位为“每名玩家每分钟次数”，例如：
+ * <pre>java -cp target/benchmarks.jar com.y4vyq.partnerplugin.LoadHarness players=5000 ticks=6000</pre>
+ * 计时包含替身对象（动态代理）本身的开销，应与同一环境下的历史结果比较，而不是当作真实服务端的绝对值
+ */
+public final class LoadHarness {
+
+    private static final Command PARTNER_COMMAND = new Command("partner") {
+        @Override
+        public boolean execute(CommandSender sender, String label, String[] args) {
+            return false;
+        }
+    };
+    private static final String[] SUMMON = new String[0];
+    private static final String[] HIDE = {"hide"};
+    private static final String[] SHOW = {"show"};
+
+    private final Options options;
+    private final Random random;
+    private final SimServer sim = new SimServer();
+    private final List<World> worlds = new ArrayList<>();
+    private final List<Player> online = new ArrayList<>();
+    // 等待重新上线的玩家，按下线顺序排列
+    private final Deque<Rejoin> offline = new ArrayDeque<>();
+    private PartnerPlugin plugin;
+    private long actionErrors;
+
+    private LoadHarness(Options options) {
+        this.options = options;
+        this.random = new Random(options.seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Logger.getLogger("").setLevel(Level.WARNING);
+        new LoadHarness(Options.parse(args)).run();
+    }
+
+    private void run() throws Exception {
+        File dataFolder = Files.createTempDirectory("partner-load").toFile();
+        plugin = sim.load(dataFolder);
+        plugin.onEnable();
+
+        for (int i = 0; i < options.worlds; i++) {
+            worlds.add(sim.world(i == 0 ? "world" : "world_" + i));
+        }
+        for (int i = 0; i < options.players; i++) {
+            join("player" + i);
+        }
+
+        System.out.printf(Locale.ROOT, "players=%d worlds=%d ticks=%d data=%s%n",
+                options.players, options.worlds, options.ticks, dataFolder);
+        System.out.println("   tick  online partners entities  tasks  run/t particles/t   ms/t  max ms");
+
+        long[] tickNanos = new long[options.ticks];
+        long windowNanos = 0;
+        long windowMax = 0;
+        long windowParticles = sim.particleCalls.sum();
+        long windowTasksRun = sim.tasksRun.sum();
+        for (int tick = 0; tick < options.ticks; tick++) {
+            long spent = simulateTick();
+            tickNanos[tick] = spent;
+            windowNanos += spent;
+            windowMax = Math.max(windowMax, spent);
+
+            if ((tick + 1) % options.report == 0) {
+                long particles = sim.particleCalls.sum();
+                long tasksRun = sim.tasksRun.sum();
+                System.out.printf(Locale.ROOT, "%7d %7d %8d %8d %6d %6.1f %11.1f %6.3f %7.3f%n",
+                        tick + 1, online.size(), plugin.getPartnerService().getPartnerCount(), sim.liveEntities(),
+                        sim.pendingTasks(), (double) (tasksRun - windowTasksRun) / options.report,
+                        (double) (particles - windowParticles) / options.report,
+                        windowNanos / 1e6 / options.report, windowMax / 1e6);
+                windowNanos = 0;
+                windowMax = 0;
+                windowParticles = particles;
+                windowTasksRun = tasksRun;
+            }
+        }
+
+        plugin.onDisable();
+        sim.shutdown();
+        summarize(tickNanos);
+    }
+
+    /**
+     * 模拟一个 tick：推进时钟并执行到期的同步任务，然后处理玩家上线、行走与操作；返回插件在主线程上花费的纳秒数
+     */
+    private long simulateTick() {
+        long spent = sim.tick();
+
+        Rejoin next;
+        while ((next = offline.peek()) != null && next.tick <= sim.currentTick()) {
+            offline.poll();
+            spent += join(next.name);
+        }
+
+        for (int i = 0; i < online.size(); i++) {
+            Player player = online.get(i);
+            walk(player);
+
+            if (roll(options.summonRate)) {
+                spent += command(player, SUMMON);
+            }
+            if (roll(options.hideRate)) {
+                spent += command(player, HIDE);
+            }
+            if (roll(options.showRate)) {
+                spent += command(player, SHOW);
+            }
+            if (roll(options.teleportRate)) {
+                spent += teleport(player);
+            }
+            if (roll(options.quitRate)) {
+                spent += quit(player);
+                // quit 把最后一名玩家换到了当前位置
+                i--;
+            }
+        }
+
+        // 模拟的服务端 tick 耗时 = 其余负载 + 插件耗时，驱动自适应粒子质量
+        double mspt = options.serverMspt + spent / 1e6;
+        long remaining = (long) ((50 - mspt) * 1e6);
+        plugin.onServerTickEnd(new ServerTickEndEvent(sim.currentTick(), mspt, remaining));
+        return spent;
+    }
+
+    private boolean roll(double perMinute) {
+        return perMinute > 0 && random.nextDouble() < perMinute / 1200;
+    }
+
+    private void walk(Player player) {
+        if (options.walkSpeed <= 0) return;
+        Location location = player.getLocation();
+        float yaw = location.getYaw() + (float) (random.nextGaussian() * 10);
+        location.setYaw(yaw);
+        double radians = Math.toRadians(yaw);
+        location.add(-Math.sin(radians) * options.walkSpeed, 0, Math.cos(radians) * options.walkSpeed);
+        sim.move(player, location);
+    }
+
+    private long command(Player player, String[] args) {
+        long start = System.nanoTime();
+        try {
+            plugin.onCommand(player, PARTNER_COMMAND, "partner", args);
+        } catch (RuntimeException e) {
+            error("命令 /partner " + String.join(" ", args), e);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long teleport(Player player) {
+        Location from = player.getLocation();
+        Location to;
+        if (worlds.size() > 1 && random.nextDouble() < options.crossWorld) {
+            World target = worlds.get(random.nextInt(worlds.size()));
+            to = new Location(target, randomCoordinate(), SimServer.GROUND_Y, randomCoordinate());
+        } else {
+            to = from.clone().add((random.nextDouble() * 2 - 1) * options.teleportRange, 0,
+                    (random.nextDouble() * 2 - 1) * options.teleportRange);
+        }
+
+        long start = System.nanoTime();
+        try {
+            plugin.onPlayerTeleport(new PlayerTeleportEvent(player, from, to, PlayerTeleportEvent.TeleportCause.PLUGIN));
+        } catch (RuntimeException e) {
+            error("传送", e);
+        }
+        long spent = System.nanoTime() - start;
+        sim.move(player, to);
+        return spent;
+    }
+
+    private long quit(Player player) {
+        long start = System.nanoTime();
+        try {
+            plugin.onPlayerQuit(new PlayerQuitEvent(player, Component.empty(), PlayerQuitEvent.QuitReason.DISCONNECTED));
+        } catch (RuntimeException e) {
+            error("下线", e);
+        }
+        long spent = System.nanoTime() - start;
+
+        sim.quit(player);
+        int index = online.indexOf(player);
+        int last = online.size() - 1;
+        online.set(index, online.get(last));
+        online.remove(last);
+        offline.add(new Rejoin(player.getName(), sim.currentTick() + options.rejoinSeconds * 20));
+        return spent;
+    }
+
+    private long join(String name) {
+        World world = worlds.get(random.nextInt(worlds.size()));
+        Player player = sim.join(name, new Location(world, randomCoordinate(), SimServer.GROUND_Y, randomCoordinate(),
+                random.nextFloat() * 360, 0));
+        online.add(player);
+
+        long start = System.nanoTime();
+        try {
+            plugin.onPlayerJoin(new PlayerJoinEvent(player, Component.empty()));
+        } catch (RuntimeException e) {
+            error("上线", e);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private double randomCoordinate() {
+        return (random.nextDouble() * 2 - 1) * options.spread;
+    }
+
+    private void error(String action, RuntimeException e) {
+        if (actionErrors++ < 10) {
+            System.err.println(action + " 出错: " + e);
+            e.printStackTrace();
+        }
+    }
+
+    private void summarize(long[] tickNanos) {
+        long[] sorted = tickNanos.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long nanos : sorted) {
+            total += nanos;
+        }
+        int ticks = sorted.length;
+        System.out.println();
+        System.out.printf(Locale.ROOT, "plugin ms/tick: mean %.3f  p50 %.3f  p95 %.3f  p99 %.3f  max %.3f%n",
+                total / 1e6 / ticks, percentile(sorted, 0.50), percentile(sorted, 0.95),
+                percentile(sorted, 0.99), sorted[ticks - 1] / 1e6);
+        System.out.printf(Locale.ROOT, "tasks scheduled %d, run %d, failed %d; particle calls %d (%.1f/tick); "
+                        + "messages %d; action errors %d; entities left %d%n",
+                sim.tasksScheduled.sum(), sim.tasksRun.sum(), sim.taskErrors.sum(), sim.particleCalls.sum(),
+                (double) sim.particleCalls.sum() / ticks, sim.messages.sum(), actionErrors, sim.liveEntities());
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(sorted.length * percentile) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private static final class Rejoin {
+        final String name;
+        final int tick;
+
+        Rejoin(String name, int tick) {
+            this.name = name;
+            this.tick = tick;
+        }
+    }
+
+    /**
+     * 负载参数
+     */
+    private static final class Options {
+        int players = 1000;
+        int worlds = 2;
+        int ticks = 2400;
+        int report = 200;
+        long seed = 1;
+        // 每名玩家每分钟的操作次数
+        double summonRate = 0.5;
+        double hideRate = 0.2;
+        double showRate = 0.2;
+        double teleportRate = 1.0;
+        double quitRate = 0.1;
+        // 传送中跨世界的比例、同世界传送的最大距离与玩家分布半径(方块)
+        double crossWorld = 0.2;
+        double teleportRange = 200;
+        double spread = 2000;
+        // 下线后重新上线的等待时间(秒)与行走速度(方块/tick)
+        int rejoinSeconds = 30;
+        double walkSpeed = 0.2;
+        // 插件之外的服务端负载(毫秒/tick)
+        double serverMspt = 20;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int split = arg.indexOf('=');
+                if (split < 0) {
+                    throw new IllegalArgumentException("参数格式应为 key=value: " + arg);
+                }
+                String key = arg.substring(0, split);
+                String value = arg.substring(split + 1);
+                switch (key) {
+                    case "players": options.players = Integer.parseInt(value); break;
+                    case "worlds": options.worlds = Math.max(1, Integer.parseInt(value)); break;
+                    case "ticks": options.ticks = Math.max(1, Integer.parseInt(value)); break;
+                    case "report": options.report = Math.max(1, Integer.parseInt(value)); break;
+                    case "seed": options.seed = Long.parseLong(value); break;
+                    case "summon": options.summonRate = Double.parseDouble(value); break;
+                    case "hide": options.hideRate = Double.parseDouble(value); break;
+                    case "show": options.showRate = Double.parseDouble(value); break;
+                    case "teleport": options.teleportRate = Double.parseDouble(value); break;
+                    case "quit": options.quitRate = Double.parseDouble(value); break;
+                    case "cross-world": options.crossWorld = Double.parseDouble(value); break;
+                    case "teleport-range": options.teleportRange = Double.parseDouble(value); break;
+                    case "spread": options.spread = Double.parseDouble(value); break;
+                    case "rejoin": options.rejoinSeconds = Integer.parseInt(value); break;
+                    case "walk": options.walkSpeed = Double.parseDouble(value); break;
+                    case "server-mspt": options.serverMspt = Double.parseDouble(value); break;
+                    default:
+                        throw new IllegalArgumentException("未知参数: " + key);
+                }
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.entity.EntityType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 伙伴登记表与实体 ID 索引的查找耗时，分别测命中与未命中
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryBenchmark {
+
+    // 查找时轮流使用的键数量，需为 2 的幂
+    private static final int PROBES = 1024;
+
+    @Param({"100", "1000", "10000"})
+    public int partners;
+
+    private final Stubs.ManualScheduler scheduler = new Stubs.ManualScheduler();
+    private PartnerRegistry registry;
+    private LongObjectMap<UUID> byEntityId;
+    private UUID[] owners;
+    private UUID[] strangers;
+    private long[] entityIds;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        registry = new PartnerRegistry(scheduler);
+        byEntityId = new LongObjectMap<>();
+        owners = new UUID[PROBES];
+        strangers = new UUID[PROBES];
+        entityIds = new long[PROBES];
+
+        for (int i = 0; i < partners; i++) {
+            UUID owner = UUID.randomUUID();
+            registry.put(new PartnerInfo(owner, UUID.randomUUID(), EntityType.FOX, null, "world", false, 6000));
+            byEntityId.put(i, owner);
+            if (i < PROBES) {
+                owners[i] = owner;
+                entityIds[i] = i;
+            }
+        }
+        for (int i = partners; i < PROBES; i++) {
+            owners[i] = owners[i % partners];
+            entityIds[i] = i % partners;
+        }
+        for (int i = 0; i < PROBES; i++) {
+            strangers[i] = UUID.randomUUID();
+        }
+    }
+
+    @Benchmark
+    public PartnerInfo getPartnerHit() {
+        return registry.getPartner(owners[cursor++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public boolean hasPartnerMiss() {
+        return registry.hasPartner(strangers[cursor++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public int remainingSeconds() {
+        return registry.getRemainingSeconds(owners[cursor++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public UUID entityIdHit() {
+        return byEntityId.get(entityIds[cursor++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public UUID entityIdMiss() {
+        return byEntityId.get(partners + (cursor++ & (PROBES - 1)));
+    }
+}
@@ -0,0 +1,604 @@
+package com.y4vyq.partnerplugin;
+
+import com.destroystokyo.paper.entity.Pathfinder;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.ServicesManager;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 进程内的模拟服务端
+ * 用动态代理实现 Server、World、Player 与伙伴实体，只保存被测插件用到的状态（位置、存活、名称等）；
+ * 同步任务在调用 {@link #tick()} 的线程上按 tick 执行，异步任务交给线程池。
+ * 世界是地面高度为 {@link #GROUND_Y} 的平坦世界，区块总是已加载。
+ * 同时统计已安排的任务、存活实体数与粒子发送次数。一个进程只能创建一个实例（Bukkit 单例限制）。
+ * 世界玩家列表与实体状态可被多个线程同时访问，配合 {@link ThreadedScheduler} 时插件按区域在多个线程上运行，
+ * isOwnedByCurrentRegion 由 {@link #setRegionOwner(Predicate)} 指定的判断回答
+ */
+final class SimServer {
+
+    private static final Logger LOGGER = Logger.getLogger("SimServer");
+    // 平坦世界的地面高度：低于此高度为石头，其余为空气
+    static final int GROUND_Y = 64;
+
+    final Server server;
+    private final Thread primaryThread = Thread.currentThread();
+    private volatile int currentTick;
+
+    // 调度器：pending 只在主线程访问，其他线程安排的任务先进入 incoming
+    private final PriorityQueue<SimTask> pending = new PriorityQueue<>();
+    private final Queue<SimTask> incoming = new ConcurrentLinkedQueue<>();
+    private final ExecutorService async = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "SimServer-async");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger taskIds = new AtomicInteger();
+    private final BukkitScheduler scheduler;
+
+    // 世界与实体
+    private final Map<String, World> worlds = new LinkedHashMap<>();
+    private final Map<World, List<Player>> playersByWorld = new HashMap<>();
+    private final Map<UUID, Player> online = new ConcurrentHashMap<>();
+    private final AtomicInteger entityIds = new AtomicInteger();
+    private final Map<Class<?>, EntityType> typesByClass = new HashMap<>();
+    private final Block ground;
+    private final ChunkSnapshot terrain;
+    // 当前线程是否拥有给定的实体或位置，默认所有线程都拥有
+    private volatile Predicate<Object> regionOwner = target -> true;
+
+    // 统计
+    final LongAdder particleCalls = new LongAdder();
+    final LongAdder messages = new LongAdder();
+    final LongAdder tasksScheduled = new LongAdder();
+    final LongAdder tasksRun = new LongAdder();
+    final LongAdder taskErrors = new LongAdder();
+    private final AtomicInteger liveEntities = new AtomicInteger();
+
+    SimServer() {
+        for (EntityType type : EntityType.values()) {
+            Class<?> entityClass = type.getEntityClass();
+            if (entityClass != null) {
+                typesByClass.putIfAbsent(entityClass, type);
+            }
+        }
+        ground = proxy(Block.class, (proxy, method, args) -> Stubs.defaultValue(method.getReturnType()));
+        terrain = proxy(ChunkSnapshot.class, (proxy, method, args) -> "getBlockType".equals(method.getName())
+                ? ((int) args[1] < GROUND_Y ? Material.STONE : Material.AIR)
+                : Stubs.defaultValue(method.getReturnType()));
+        scheduler = proxy(BukkitScheduler.class, this::schedulerCall);
+        server = proxy(Server.class, this::serverCall);
+        Bukkit.setServer(server);
+    }
+
+    // ================== 插件 ================== //
+
+    /**
+     * 用插件 jar 内的 plugin.yml 构造插件，数据目录为 dataFolder；构造后由调用方执行 onEnable
+     */
+    PartnerPlugin load(File dataFolder) throws IOException, InvalidDescriptionException {
+        return load(dataFolder, null);
+    }
+
+    /**
+     * 同 {@link #load(File)}，插件使用给定的调度器；scheduler 为 null 时使用基于本服务端主线程的默认调度器
+     */
+    PartnerPlugin load(File dataFolder, TaskScheduler scheduler) throws IOException, InvalidDescriptionException {
+        PluginDescriptionFile description;
+        try (InputStream in = PartnerPlugin.class.getClassLoader().getResourceAsStream("plugin.yml")) {
+            if (in == null) throw new IOException("找不到 plugin.yml");
+            description = new PluginDescriptionFile(in);
+        }
+        File jar = new File(PartnerPlugin.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+        return new PartnerPlugin(new JavaPluginLoader(server), description, dataFolder, jar, scheduler);
+    }
+
+    /**
+     * 指定 Bukkit.isOwnedByCurrentRegion 的判断，参数为实体或位置
+     */
+    void setRegionOwner(Predicate<Object> regionOwner) {
+        this.regionOwner = regionOwner;
+    }
+
+    // ================== 时钟与调度 ================== //
+
+    int currentTick() {
+        return currentTick;
+    }
+
+    /**
+     * 推进一个 tick 并执行所有到期的同步任务，返回执行任务花费的纳秒数
+     */
+    long tick() {
+        currentTick++;
+        drainIncoming();
+        long spent = 0;
+        SimTask task;
+        while ((task = pending.peek()) != null && task.nextTick <= currentTick) {
+            pending.poll();
+            if (task.cancelled) continue;
+
+            long start = System.nanoTime();
+            try {
+                task.runnable.run();
+            } catch (Throwable e) {
+                taskErrors.increment();
+                LOGGER.log(Level.WARNING, "任务 " + task.id + " 执行出错", e);
+            }
+            spent += System.nanoTime() - start;
+            tasksRun.increment();
+
+            if (task.period > 0 && !task.cancelled) {
+                task.nextTick += task.period;
+                pending.add(task);
+            }
+        }
+        return spent;
+    }
+
+    /**
+     * 尚未取消的已安排同步任务数（含重复任务）
+     */
+    int pendingTasks() {
+        drainIncoming();
+        int count = 0;
+        for (SimTask task : pending) {
+            if (!task.cancelled) count++;
+        }
+        return count;
+    }
+
+    void shutdown() throws InterruptedException {
+        async.shutdown();
+        async.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private void drainIncoming() {
+        SimTask task;
+        while ((task = incoming.poll()) != null) {
+            pending.add(task);
+        }
+    }
+
+    private SimTask schedule(Runnable runnable, long delay, long period) {
+        SimTask task = new SimTask(taskIds.incrementAndGet(), runnable, currentTick + Math.max(1, delay), period);
+        tasksScheduled.increment();
+        incoming.add(task);
+        return task;
+    }
+
+    private Object schedulerCall(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "runTask":
+                return schedule((Runnable) args[1], 0, 0).handle;
+            case "runTaskLater":
+                return schedule((Runnable) args[1], (Long) args[2], 0).handle;
+            case "runTaskTimer":
+                return schedule((Runnable) args[1], (Long) args[2], Math.max(1, (Long) args[3])).handle;
+            case "runTaskAsynchronously": {
+                SimTask task = new SimTask(taskIds.incrementAndGet(), (Runnable) args[1], currentTick, 0);
+                tasksScheduled.increment();
+                async.execute(() -> {
+                    if (!task.cancelled) task.runnable.run();
+                });
+                return task.handle;
+            }
+            case "cancelTasks":
+                drainIncoming();
+                for (SimTask task : pending) {
+                    task.cancelled = true;
+                }
+                pending.clear();
+                return null;
+            default:
+                return Stubs.defaultValue(method.getReturnType());
+        }
+    }
+
+    // ================== 世界与玩家 ================== //
+
+    World world(String name) {
+        return worlds.computeIfAbsent(name, key -> {
+            UUID uid = UUID.nameUUIDFromBytes(key.getBytes());
+            World world = proxy(World.class, new WorldHandler(key, uid));
+            playersByWorld.put(world, new CopyOnWriteArrayList<>());
+            return world;
+        });
+    }
+
+    Collection<World> worlds() {
+        return worlds.values();
+    }
+
+    /**
+     * 创建在线玩家，位于 location；调用方随后向插件触发加入事件
+     */
+    Player join(String name, Location location) {
+        Actor actor = new Actor(entityIds.incrementAndGet(), UUID.nameUUIDFromBytes(name.getBytes()),
+                EntityType.PLAYER, location);
+        actor.name = name;
+        actor.online = true;
+        Player player = proxy(Player.class, actor);
+        online.put(actor.uuid, player);
+        playersByWorld.get(location.getWorld()).add(player);
+        return player;
+    }
+
+    /**
+     * 玩家下线；调用方应先向插件触发退出事件
+     */
+    void quit(Player player) {
+        Actor actor = actor(player);
+        actor.online = false;
+        actor.valid = false;
+        online.remove(actor.uuid);
+        playersByWorld.get(actor.location.getWorld()).remove(player);
+    }
+
+    /**
+     * 移动实体（玩家或伙伴），跨世界时更新世界的玩家列表
+     */
+    void move(Entity entity, Location to) {
+        Actor actor = actor(entity);
+        World from = actor.location.getWorld();
+        actor.location = to.clone();
+        if (entity instanceof Player && from != to.getWorld()) {
+            playersByWorld.get(from).remove(entity);
+            playersByWorld.get(to.getWorld()).add((Player) entity);
+        }
+    }
+
+    Collection<Player> onlinePlayers() {
+        return online.values();
+    }
+
+    int liveEntities() {
+        return liveEntities.get();
+    }
+
+    private static Actor actor(Entity entity) {
+        return (Actor) Proxy.getInvocationHandler(entity);
+    }
+
+    private Object serverCall(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getLogger":
+                return LOGGER;
+            case "getName":
+                return "SimServer";
+            case "getVersion":
+            case "getBukkitVersion":
+            case "getMinecraftVersion":
+                return "simulated";
+            case "getScheduler":
+                return scheduler;
+            case "getPluginManager":
+                return proxy(PluginManager.class, (p, m, a) -> Stubs.defaultValue(m.getReturnType()));
+            case "getServicesManager":
+                return proxy(ServicesManager.class, (p, m, a) -> Stubs.defaultValue(m.getReturnType()));
+            case "isPrimaryThread":
+                return Thread.currentThread() == primaryThread;
+            case "getCurrentTick":
+                return currentTick;
+            case "getPlayer":
+                return args[0] instanceof UUID ? online.get(args[0]) : null;
+            case "getOnlinePlayers":
+                return Collections.unmodifiableCollection(online.values());
+            case "getWorlds":
+                return new ArrayList<>(worlds.values());
+            case "getWorld":
+                if (args[0] instanceof String) return worlds.get(args[0]);
+                for (World world : worlds.values()) {
+                    if (world.getUID().equals(args[0])) return world;
+                }
+                return null;
+            case "isOwnedByCurrentRegion":
+                return regionOwner.test(args[0]);
+            case "getViewDistance":
+            case "getSimulationDistance":
+                return 10;
+            default:
+                return Stubs.defaultValue(method.getReturnType());
+        }
+    }
+
+    /**
+     * 世界：保存在线玩家列表，生成实体并统计粒子发送
+     */
+    private final class WorldHandler implements InvocationHandler {
+        private final String name;
+        private final UUID uid;
+
+        WorldHandler(String name, UUID uid) {
+            this.name = name;
+            this.uid = uid;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getUID":
+                    return uid;
+                case "getPlayers":
+                    return Collections.unmodifiableList(playersByWorld.get(proxy));
+                case "getBlockAt":
+                    return ground;
+                case "getLivingEntities":
+                    // 模拟世界没有存档中遗留的实体
+                    return Collections.emptyList();
+                case "isChunkLoaded":
+                    return true;
+                case "getChunkAt":
+                    return chunk((World) proxy, (int) args[0], (int) args[1]);
+                case "getChunkAtAsync":
+                    return CompletableFuture.completedFuture(chunk((World) proxy, (int) args[0], (int) args[1]));
+                case "getMinHeight":
+                    return -64;
+                case "getMaxHeight":
+                    return 320;
+                case "spawnParticle":
+                    particleCalls.increment();
+                    return null;
+                case "spawn":
+                    return spawn((Location) args[0], (Class<? extends Entity>) args[1],
+                            args.length > 2 ? (Consumer<Entity>) args[2] : null);
+                case "spawnEntity":
+                    return spawn((Location) args[0], ((EntityType) args[1]).getEntityClass(), null);
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "SimWorld{" + name + "}";
+                default:
+                    return Stubs.defaultValue(method.getReturnType());
+            }
+        }
+    }
+
+    private Chunk chunk(World world, int x, int z) {
+        return proxy(Chunk.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getX":
+                    return x;
+                case "getZ":
+                    return z;
+                case "getWorld":
+                    return world;
+                case "isLoaded":
+                    return true;
+                case "getChunkSnapshot":
+                    return terrain;
+                default:
+                    return Stubs.defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private Entity spawn(Location location, Class<? extends Entity> entityClass, Consumer<Entity> setup) {
+        EntityType type = typesByClass.getOrDefault(entityClass, EntityType.UNKNOWN);
+        Actor actor = new Actor(entityIds.incrementAndGet(), UUID.randomUUID(), type, location);
+        Entity entity = proxy(entityClass, actor);
+        if (setup != null) {
+            setup.accept(entity);
+        }
+        liveEntities.incrementAndGet();
+        return entity;
+    }
+
+    /**
+     * 玩家与伙伴实体共用的状态：未特别处理的 setXxx 记录参数，getXxx/isXxx 读回记录的值
+     */
+    private final class Actor implements InvocationHandler {
+        final int id;
+        final UUID uuid;
+        final EntityType type;
+        final Map<String, Object> properties = Collections.synchronizedMap(new HashMap<>());
+        final PersistentDataContainer data =
+                proxy(PersistentDataContainer.class, (p, m, a) -> Stubs.defaultValue(m.getReturnType()));
+        volatile Location location;
+        volatile boolean valid = true;
+        volatile boolean online;
+        String name;
+        Pathfinder pathfinder;
+
+        Actor(int id, UUID uuid, EntityType type, Location location) {
+            this.id = id;
+            this.uuid = uuid;
+            this.type = type;
+            this.location = location.clone();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getEntityId":
+                    return id;
+                case "getUniqueId":
+                    return uuid;
+                case "getType":
+                    return type;
+                case "getName":
+                    return name;
+                case "getWorld":
+                    return location.getWorld();
+                case "getLocation":
+                    return args == null ? location.clone() : copyInto((Location) args[0]);
+                case "teleport":
+                    move((Entity) proxy, (Location) args[0]);
+                    return true;
+                case "teleportAsync":
+                    move((Entity) proxy, (Location) args[0]);
+                    return CompletableFuture.completedFuture(true);
+                case "isValid":
+                    return valid;
+                case "isDead":
+                    return !valid;
+                case "isOnline":
+                    return online;
+                case "remove":
+                    if (valid) {
+                        valid = false;
+                        liveEntities.decrementAndGet();
+                    }
+                    return null;
+                case "getPersistentDataContainer":
+                    return data;
+                case "getPathfinder":
+                    if (pathfinder == null) {
+                        pathfinder = proxy(Pathfinder.class, (p, m, a) -> {
+                            // 寻路直接视为到达
+                            if ("moveTo".equals(m.getName()) && a != null && a[0] instanceof Entity) {
+                                move((Entity) proxy, ((Entity) a[0]).getLocation());
+                                return true;
+                            }
+                            return Stubs.defaultValue(m.getReturnType());
+                        });
+                    }
+                    return pathfinder;
+                case "spawnParticle":
+                    particleCalls.increment();
+                    return null;
+                case "sendMessage":
+                    messages.increment();
+                    return null;
+                case "hasPermission":
+                    return false;
+                case "getGameMode":
+                    return GameMode.SURVIVAL;
+                case "getLocale":
+                    return "zh_cn";
+                case "getClientViewDistance":
+                case "getViewDistance":
+                    return 10;
+                case "getMaxHealth":
+                case "getHealth":
+                    return properties.containsKey("Health") ? properties.get("Health") : 20.0;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type + "{" + id + "}";
+                default:
+                    return property(method, args);
+            }
+        }
+
+        private Location copyInto(Location target) {
+            Location current = location;
+            target.setWorld(current.getWorld());
+            target.setX(current.getX());
+            target.setY(current.getY());
+            target.setZ(current.getZ());
+            target.setYaw(current.getYaw());
+            target.setPitch(current.getPitch());
+            return target;
+        }
+
+        private Object property(Method method, Object[] args) {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length == 1) {
+                properties.put(name.substring(3), args[0]);
+                return Stubs.defaultValue(method.getReturnType());
+            }
+            if (args == null) {
+                String key = name.startsWith("get") ? name.substring(3) : name.startsWith("is") ? name.substring(2) : null;
+                if (key != null && properties.containsKey(key)) return properties.get(key);
+            }
+            return Stubs.defaultValue(method.getReturnType());
+        }
+    }
+
+    /**
+     * 已安排的同步任务，按执行 tick 与安排顺序排序
+     */
+    private static final class SimTask implements Comparable<SimTask> {
+        final int id;
+        final Runnable runnable;
+        final long period;
+        long nextTick;
+        volatile boolean cancelled;
+        final BukkitTask handle;
+
+        SimTask(int id, Runnable runnable, long nextTick, long period) {
+            this.id = id;
+            this.runnable = runnable;
+            this.nextTick = nextTick;
+            this.period = period;
+            this.handle = proxy(BukkitTask.class, (p, m, a) -> {
+                switch (m.getName()) {
+                    case "cancel":
+                        cancelled = true;
+                        return null;
+                    case "isCancelled":
+                        return cancelled;
+                    case "getTaskId":
+                        return this.id;
+                    default:
+                        return Stubs.defaultValue(m.getReturnType());
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(SimTask other) {
+            int order = Long.compare(nextTick, other.nextTick);
+            return order != 0 ? order : Integer.compare(id, other.id);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+}
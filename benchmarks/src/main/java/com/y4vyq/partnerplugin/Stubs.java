@@ -0,0 +1,161 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * 基准测试用的轻量替身
+ * 用动态代理实现 Bukkit 接口，只回答被测代码会调用的方法，其余方法返回默认值；
+ * 不启动服务端，也不需要 MockBukkit，离线即可运行
+ */
+final class Stubs {
+
+    private Stubs() {
+    }
+
+    static World world(String name) {
+        UUID uid = UUID.nameUUIDFromBytes(name.getBytes());
+        Map<String, Object> answers = new HashMap<>();
+        answers.put("getName", name);
+        answers.put("getUID", uid);
+        return proxy(World.class, answers);
+    }
+
+    static Entity entity(int entityId, EntityType type, World world) {
+        Map<String, Object> answers = new HashMap<>();
+        answers.put("getEntityId", entityId);
+        answers.put("getUniqueId", new UUID(entityId, entityId));
+        answers.put("getType", type);
+        answers.put("getWorld", world);
+        answers.put("getLocation", new Location(world, entityId & 255, 64, entityId >> 8));
+        answers.put("isValid", true);
+        answers.put("getPersistentDataContainer", proxy(PersistentDataContainer.class, new HashMap<>()));
+        return proxy(Entity.class, answers);
+    }
+
+    static Plugin plugin(String name) {
+        Map<String, Object> answers = new HashMap<>();
+        answers.put("getName", name);
+        answers.put("getLogger", Logger.getLogger(name));
+        return proxy(Plugin.class, answers);
+    }
+
+    /**
+     * 用插件 jar 内置的 config.yml、help.yml 与 effects.yml 编译配置
+     */
+    static PartnerConfig defaultConfig() {
+        return PartnerConfig.load(resource("config.yml"), resource("help.yml"), resource("effects.yml"),
+                Logger.getLogger("PartnerPlugin"));
+    }
+
+    /**
+     * 把插件 jar 内的资源复制为临时文件
+     */
+    static File resource(String name) {
+        try (InputStream in = PartnerPlugin.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) throw new IllegalStateException("找不到资源: " + name);
+            File file = File.createTempFile("partner-", "-" + name);
+            file.deleteOnExit();
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return file;
+        } catch (IOException e) {
+            throw new IllegalStateException("无法读取资源: " + name, e);
+        }
+    }
+
+    /**
+     * 时钟固定、任务立即在当前线程执行的调度器
+     */
+    static final class ManualScheduler implements TaskScheduler {
+        int tick;
+
+        @Override
+        public boolean isRegionized() {
+            return false;
+        }
+
+        @Override
+        public int currentTick() {
+            return tick;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public void run(Runnable task) {
+            task.run();
+        }
+
+        @Override
+        public Task runRepeating(Runnable task, long delay, long period) {
+            return () -> { };
+        }
+
+        @Override
+        public void runAsync(Runnable task) {
+            task.run();
+        }
+
+        @Override
+        public void runAt(Location location, Runnable task) {
+            task.run();
+        }
+
+        @Override
+        public Task runAtRepeating(Location location, Runnable task, long delay, long period) {
+            return () -> { };
+        }
+
+        @Override
+        public void runFor(Entity entity, Runnable task) {
+            task.run();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Map<String, Object> answers) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            if (answers.containsKey(name)) return answers.get(name);
+            if (name.equals("hashCode") && method.getParameterCount() == 0) return System.identityHashCode(proxy);
+            if (name.equals("equals") && method.getParameterCount() == 1) return proxy == args[0];
+            if (name.equals("toString") && method.getParameterCount() == 0) return type.getSimpleName() + answers;
+            return defaultValue(method.getReturnType());
+        };
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) return null;
+        if (type == boolean.class) return false;
+        if (type == char.class) return '\0';
+        if (type == float.class) return 0f;
+        if (type == double.class) return 0d;
+        if (type == long.class) return 0L;
+        if (type == int.class) return 0;
+        if (type == short.class) return (short) 0;
+        return (byte) 0;
+    }
+}
@@ -0,0 +1,245 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多线程的模拟区域调度器
+ * 仿照 Folia 的区域划分：世界按 {@link #REGION_SHIFT} 个区块为边长分成区域，区域按哈希分给固定数量的区域线程，
+ * 位置与实体任务在其所属区域的线程执行，实体任务按执行时实体所在位置分派、实体已移除时丢弃；
+ * 全局任务与时钟在单独的全局线程，异步任务在线程池执行。当前线程已拥有目标时 runAt/runFor 立即执行。
+ * 任务中抛出的异常被记录下来供测试检查，{@link #awaitIdle(long)} 等待所有一次性任务执行完毕
+ */
+final class ThreadedScheduler implements TaskScheduler {
+
+    // 区域边长为 2^REGION_SHIFT 个区块，与 Folia 区域块一致：插件按区域块分组的状态总在同一线程访问
+    private static final int REGION_SHIFT = 4;
+
+    private final int tickMillis;
+    private final ScheduledExecutorService global;
+    private final ScheduledExecutorService[] regions;
+    private final ExecutorService async;
+    // 当前线程所属的区域线程下标，全局与异步线程为 -1
+    private final ThreadLocal<Integer> currentRegion = ThreadLocal.withInitial(() -> -1);
+    private final AtomicInteger clock = new AtomicInteger();
+    // 尚未执行完的一次性任务数
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<ScheduledFuture<?>, Boolean> repeating = new ConcurrentHashMap<>();
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    private ScheduledFuture<?> clockTask;
+
+    /**
+     * @param regionThreads 区域线程数
+     * @param tickMillis    每 tick 的毫秒数，可以小于真实服务端的 50ms 以加快测试
+     */
+    ThreadedScheduler(int regionThreads, int tickMillis) {
+        this.tickMillis = Math.max(1, tickMillis);
+        this.global = Executors.newSingleThreadScheduledExecutor(named("global", -1));
+        this.regions = new ScheduledExecutorService[regionThreads];
+        for (int i = 0; i < regionThreads; i++) {
+            regions[i] = Executors.newSingleThreadScheduledExecutor(named("region-" + i, i));
+        }
+        this.async = Executors.newFixedThreadPool(2, named("async", -1));
+    }
+
+    private ThreadFactory named(String name, int region) {
+        return runnable -> {
+            Thread thread = new Thread(() -> {
+                currentRegion.set(region);
+                runnable.run();
+            }, "Sim-" + name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // ================== TaskScheduler ================== //
+
+    @Override
+    public boolean isRegionized() {
+        return true;
+    }
+
+    @Override
+    public int currentTick() {
+        return clock.get();
+    }
+
+    @Override
+    public void start() {
+        if (clockTask == null) {
+            clockTask = global.scheduleAtFixedRate(clock::incrementAndGet, tickMillis, tickMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (ScheduledFuture<?> future : repeating.keySet()) {
+            future.cancel(false);
+        }
+        repeating.clear();
+    }
+
+    @Override
+    public void run(Runnable task) {
+        submit(global, task);
+    }
+
+    @Override
+    public Task runRepeating(Runnable task, long delay, long period) {
+        return repeat(global, task, delay, period);
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        inFlight.incrementAndGet();
+        async.execute(() -> execute(task));
+    }
+
+    @Override
+    public void runAt(Location location, Runnable task) {
+        int region = regionOf(location);
+        if (currentRegion.get() == region) {
+            task.run();
+        } else {
+            submit(regions[region], task);
+        }
+    }
+
+    @Override
+    public Task runAtRepeating(Location location, Runnable task, long delay, long period) {
+        return repeat(regions[regionOf(location)], task, delay, period);
+    }
+
+    @Override
+    public void runFor(Entity entity, Runnable task) {
+        if (owns(entity)) {
+            task.run();
+            return;
+        }
+        inFlight.incrementAndGet();
+        dispatch(entity, task);
+    }
+
+    // ================== 测试辅助 ================== //
+
+    /**
+     * 当前线程是否拥有实体或位置，供模拟服务端回答 isOwnedByCurrentRegion
+     */
+    boolean owns(Object target) {
+        Location location = target instanceof Entity ? ((Entity) target).getLocation()
+                : target instanceof Location ? (Location) target : null;
+        return location != null && currentRegion.get() == regionOf(location);
+    }
+
+    /**
+     * 在实体所属的区域线程执行 action（测试中模拟玩家操作与事件）
+     */
+    void act(Entity entity, Runnable action) {
+        inFlight.incrementAndGet();
+        dispatch(entity, action);
+    }
+
+    /**
+     * 等待所有一次性任务执行完毕，超时返回 false
+     */
+    boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        // 连续几次观察到空闲才算完成，任务链中的下一个任务可能尚未提交
+        int quiet = 0;
+        while (quiet < 5) {
+            if (System.currentTimeMillis() > deadline) return false;
+            quiet = inFlight.get() == 0 ? quiet + 1 : 0;
+            Thread.sleep(tickMillis);
+        }
+        return true;
+    }
+
+    Queue<Throwable> failures() {
+        return failures;
+    }
+
+    void close() throws InterruptedException {
+        shutdown();
+        if (clockTask != null) {
+            clockTask.cancel(false);
+        }
+        global.shutdown();
+        async.shutdown();
+        for (ScheduledExecutorService region : regions) {
+            region.shutdown();
+        }
+        global.awaitTermination(5, TimeUnit.SECONDS);
+        async.awaitTermination(5, TimeUnit.SECONDS);
+        for (ScheduledExecutorService region : regions) {
+            region.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private int regionOf(Location location) {
+        World world = location.getWorld();
+        int regionX = (location.getBlockX() >> 4) >> REGION_SHIFT;
+        int regionZ = (location.getBlockZ() >> 4) >> REGION_SHIFT;
+        int hash = 31 * (31 * System.identityHashCode(world) + regionX) + regionZ;
+        return Math.floorMod(hash ^ (hash >>> 16), regions.length);
+    }
+
+    /**
+     * 把已计入 inFlight 的实体任务交给实体所在区域；排队期间实体移动到其他区域时转交过去，已移除时丢弃
+     */
+    private void dispatch(Entity entity, Runnable task) {
+        regions[regionOf(entity.getLocation())].execute(() -> {
+            if (!entity.isValid()) {
+                inFlight.decrementAndGet();
+            } else if (!owns(entity)) {
+                dispatch(entity, task);
+            } else {
+                execute(task);
+            }
+        });
+    }
+
+    private void submit(ScheduledExecutorService executor, Runnable task) {
+        inFlight.incrementAndGet();
+        executor.execute(() -> execute(task));
+    }
+
+    private Task repeat(ScheduledExecutorService executor, Runnable task, long delay, long period) {
+        ScheduledFuture<?> future = executor.scheduleAtFixedRate(() -> {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        }, Math.max(1, delay) * tickMillis, Math.max(1, period) * tickMillis, TimeUnit.MILLISECONDS);
+        repeating.put(future, Boolean.TRUE);
+        return () -> {
+            future.cancel(false);
+            repeating.remove(future);
+        };
+    }
+
+    private void execute(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable e) {
+            failures.add(e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+}
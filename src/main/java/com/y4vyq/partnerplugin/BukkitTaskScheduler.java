@@ -0,0 +1,77 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * 单主线程服务端的调度实现，所有同步任务都在主线程执行
+ */
+final class BukkitTaskScheduler implements TaskScheduler {
+
+    private final Plugin plugin;
+
+    BukkitTaskScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean isRegionized() {
+        return false;
+    }
+
+    @Override
+    public int currentTick() {
+        return Bukkit.getCurrentTick();
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void shutdown() {
+        Bukkit.getScheduler().cancelTasks(plugin);
+    }
+
+    @Override
+    public void run(Runnable task) {
+        Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    @Override
+    public Task runRepeating(Runnable task, long delay, long period) {
+        BukkitTask scheduled = Bukkit.getScheduler().runTaskTimer(plugin, task, delay, period);
+        return scheduled::cancel;
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
+    }
+
+    @Override
+    public void runAt(Location location, Runnable task) {
+        runSync(task);
+    }
+
+    @Override
+    public Task runAtRepeating(Location location, Runnable task, long delay, long period) {
+        return runRepeating(task, delay, period);
+    }
+
+    @Override
+    public void runFor(Entity entity, Runnable task) {
+        runSync(task);
+    }
+
+    private void runSync(Runnable task) {
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.y4vyq.partnerplugin;
+
+import java.util.UUID;
+
+/**
+ * 冷却表：玩家 UUID -> 冷却结束的服务器 tick
+ * 只记录时间戳，不为冷却安排任何任务；查询时按当前 tick 惰性判断并顺手删除过期项，
+ * 表增长到扩容阈值前先原地清扫一次过期项，因此大小只取决于同时处于冷却中的玩家数。
+ * UUID 的高低 64 位与结束 tick 保存在并行的基本类型数组中，查找时比较完整的 128 位，不会有两名玩家共用冷却。
+ * 公开方法同步，可在多个区域线程调用
+ */
+final class CooldownMap extends OpenHashTable {
+
+    private long[] most;
+    private long[] least;
+    private int[] expiries;
+    private boolean[] used;
+
+    CooldownMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * 设置冷却，在 now + ticks 之前视为冷却中；ticks <= 0 时清除冷却
+     */
+    synchronized void start(UUID owner, int now, int ticks) {
+        if (ticks <= 0) {
+            remove(owner);
+            return;
+        }
+        int slot = find(owner);
+        if (slot >= 0) {
+            expiries[slot] = now + ticks;
+            return;
+        }
+        if (full()) {
+            purge(now);
+            if (full()) {
+                rehash((mask + 1) << 1);
+            }
+        }
+        insert(owner.getMostSignificantBits(), owner.getLeastSignificantBits(), now + ticks);
+    }
+
+    /**
+     * 剩余冷却 tick 数，不在冷却中返回 0
+     */
+    synchronized int remaining(UUID owner, int now) {
+        int slot = find(owner);
+        if (slot < 0) return 0;
+        int left = expiries[slot] - now;
+        if (left <= 0) {
+            removeAt(slot);
+            return 0;
+        }
+        return left;
+    }
+
+    synchronized boolean isActive(UUID owner, int now) {
+        return remaining(owner, now) > 0;
+    }
+
+    synchronized void remove(UUID owner) {
+        int slot = find(owner);
+        if (slot >= 0) {
+            removeAt(slot);
+        }
+    }
+
+    synchronized void clear() {
+        if (size == 0) return;
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+
+    private int find(UUID owner) {
+        if (size == 0) return -1;
+        long hi = owner.getMostSignificantBits();
+        long lo = owner.getLeastSignificantBits();
+        int slot = slot(hi ^ lo);
+        while (used[slot]) {
+            if (most[slot] == hi && least[slot] == lo) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 原地删除所有已过期的项；删除后后移进来的元素需要在同一槽位再次检查
+     */
+    private void purge(int now) {
+        for (int slot = 0; slot <= mask; ) {
+            if (used[slot] && expiries[slot] - now <= 0) {
+                removeAt(slot);
+            } else {
+                slot++;
+            }
+        }
+    }
+
+    @Override
+    boolean occupied(int slot) {
+        return used[slot];
+    }
+
+    @Override
+    int home(int slot) {
+        return slot(most[slot] ^ least[slot]);
+    }
+
+    @Override
+    void move(int from, int to) {
+        most[to] = most[from];
+        least[to] = least[from];
+        expiries[to] = expiries[from];
+    }
+
+    @Override
+    void vacate(int slot) {
+        used[slot] = false;
+    }
+
+    private void allocate(int capacity) {
+        most = new long[capacity];
+        least = new long[capacity];
+        expiries = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldMost = most;
+        long[] oldLeast = least;
+        int[] oldExpiries = expiries;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                insert(oldMost[i], oldLeast[i], oldExpiries[i]);
+            }
+        }
+    }
+
+    private void insert(long hi, long lo, int expiry) {
+        int slot = slot(hi ^ lo);
+        while (used[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        most[slot] = hi;
+        least[slot] = lo;
+        expiries[slot] = expiry;
+        used[slot] = true;
+        size++;
+    }
+}
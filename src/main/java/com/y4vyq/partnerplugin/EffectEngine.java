@@ -0,0 +1,426 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 全局粒子效果引擎
+ * 所有进行中的效果集中保存，由同一个定时任务推进，
+ * 并按 advanced.particle-optimization.max-particles-per-tick 在效果之间公平分配每 tick 的粒子预算。
+ * 发送前先按距离与视距筛选真正能看到效果的玩家，只向他们单独发送，无人可见的效果不消耗预算。
+ * 生成器每帧把点写入共享的 {@link ParticleBuffer}，再按观看者逐个批量发送，热路径不分配内存；
+ * 每个世界的玩家列表每 tick 只获取一次，同一世界的效果共用。
+ * 区域多线程服务端上效果按所在区域分组：同一区域块(section)内的效果共用一个通道与一个定时任务，
+ * 在该区域的线程推进，预算按活跃的通道数平分。
+ * 服务端负载高时按 {@link QualityGovernor} 的当前等级减少每帧的点数、缩短新效果并跳帧发送
+ */
+final class EffectEngine {
+
+    // 客户端渲染普通粒子的最大距离(格)
+    private static final double PARTICLE_VIEW_RANGE = 32.0;
+    // 区域块边长为 2^SECTION_SHIFT 个区块，与 Folia 区域划分的默认最小单位一致，同一区域块总属于同一区域
+    private static final int SECTION_SHIFT = 4;
+
+    private final TaskScheduler scheduler;
+    private final PartnerMetrics metrics;
+    private final QualityGovernor governor;
+    // 关闭了伙伴粒子的玩家
+    private final Set<UUID> optedOut = ConcurrentHashMap.newKeySet();
+    // 单线程服务端上所有效果共用的通道
+    private final Lane mainLane = new Lane(null);
+    // 区域多线程服务端上每个有效果的区域块一个通道
+    private final Map<Section, Lane> regionLanes = new ConcurrentHashMap<>();
+    private TaskScheduler.Task task;
+
+    // 每 tick 粒子预算，<= 0 表示不限制
+    private volatile int budget;
+    private volatile int particlesLastTick;
+    // 区域通道本 tick 已发送的粒子数，由全局任务每 tick 汇总到 particlesLastTick
+    private final LongAdder regionParticles = new LongAdder();
+    // 是否剔除不在玩家视距区块内的效果
+    private volatile boolean cullFarChunks = true;
+
+    EffectEngine(TaskScheduler scheduler, PartnerMetrics metrics, QualityGovernor governor) {
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.governor = governor;
+    }
+
+    /**
+     * 启动引擎定时任务
+     */
+    void start() {
+        if (task != null) return;
+        if (scheduler.isRegionized()) {
+            task = scheduler.runRepeating(() -> particlesLastTick = (int) regionParticles.sumThenReset(), 1, 1);
+        } else {
+            task = scheduler.runRepeating(mainLane, 1, 1);
+        }
+    }
+
+    /**
+     * 停止引擎并丢弃所有进行中的效果
+     */
+    void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        mainLane.effects.clear();
+        for (Lane lane : regionLanes.values()) {
+            lane.cancel();
+        }
+        regionLanes.clear();
+        regionParticles.reset();
+        particlesLastTick = 0;
+    }
+
+    void setBudget(int budget) {
+        this.budget = budget;
+    }
+
+    void setCullFarChunks(boolean cullFarChunks) {
+        this.cullFarChunks = cullFarChunks;
+    }
+
+    /**
+     * 设置玩家是否接收伙伴粒子
+     */
+    void setViewerEnabled(UUID playerId, boolean enabled) {
+        if (enabled) {
+            optedOut.remove(playerId);
+        } else {
+            optedOut.add(playerId);
+        }
+    }
+
+    boolean isViewerEnabled(UUID playerId) {
+        return !optedOut.contains(playerId);
+    }
+
+    int getActiveEffects() {
+        if (!scheduler.isRegionized()) {
+            return mainLane.effects.size();
+        }
+        int active = 0;
+        for (Lane lane : regionLanes.values()) {
+            active += lane.active;
+        }
+        return active;
+    }
+
+    int getParticlesLastTick() {
+        return particlesLastTick;
+    }
+
+    /**
+     * 在指定位置播放生成器的效果（在拥有该位置的线程调用）
+     */
+    void play(Location location, PartnerPlugin.FrameGenerator generator) {
+        World world = location.getWorld();
+        int duration = governor.getLevel().duration(generator.getDuration());
+        if (world == null || duration <= 0) return;
+        ActiveEffect effect = new ActiveEffect(world, location.getX(), location.getY(), location.getZ(),
+                generator, duration);
+
+        if (!scheduler.isRegionized()) {
+            mainLane.effects.add(effect);
+            return;
+        }
+        // 当前线程拥有该区域块，通道的任务也在这里执行，因此可以直接加入通道的效果列表
+        Section section = new Section(world, location.getBlockX() >> 4 >> SECTION_SHIFT,
+                location.getBlockZ() >> 4 >> SECTION_SHIFT);
+        Lane lane = regionLanes.get(section);
+        if (lane == null) {
+            lane = new Lane(section);
+            regionLanes.put(section, lane);
+            lane.task = scheduler.runAtRepeating(location, lane, 1, 1);
+        }
+        lane.effects.add(effect);
+        lane.active = lane.effects.size();
+    }
+
+    /**
+     * 效果推进通道：一组在同一线程推进的效果及其复用的缓冲区
+     */
+    private final class Lane implements Runnable {
+        // 区域通道所属的区域块，单线程服务端的通道为 null
+        final Section section;
+        final boolean regional;
+        final List<ActiveEffect> effects = new ArrayList<>();
+        // 进行中的效果数，供其他线程统计
+        volatile int active;
+        // 复用的观看者列表、帧缓冲与坐标缓冲，避免每 tick 分配
+        final List<Player> viewers = new ArrayList<>();
+        // 本 tick 已获取玩家列表的世界及其列表，下标一一对应
+        final List<World> worlds = new ArrayList<>();
+        final List<List<Player>> worldPlayers = new ArrayList<>();
+        final ParticleBuffer buffer = new ParticleBuffer();
+        final Location scratch = new Location(null, 0, 0, 0);
+        // 轮询起点，保证预算不足时各效果轮流获得余量
+        int cursor;
+        volatile TaskScheduler.Task task;
+
+        Lane(Section section) {
+            this.section = section;
+            this.regional = section != null;
+        }
+
+        @Override
+        public void run() {
+            if (effects.isEmpty()) {
+                if (regional) {
+                    cancel();
+                } else {
+                    particlesLastTick = 0;
+                }
+                return;
+            }
+
+            long start = metrics.start();
+            try {
+                tick();
+            } finally {
+                metrics.stop(PartnerMetrics.Probe.EFFECT_TICK, start);
+            }
+        }
+
+        private void tick() {
+            worlds.clear();
+            worldPlayers.clear();
+            int size = effects.size();
+            QualityGovernor.Level quality = governor.getLevel();
+
+            // 区域通道按通道数平分全局预算
+            int limit = budget;
+            if (limit > 0 && regional) {
+                limit = Math.max(1, limit / Math.max(1, regionLanes.size()));
+            }
+
+            int sent = 0;
+            if (limit <= 0) {
+                for (int i = 0; i < size; i++) {
+                    ActiveEffect effect = effects.get(i);
+                    if (quality.sends(effect.ticks) && collectViewers(effect) && writeFrame(effect)) {
+                        sent += flush(effect, quality.points(buffer.size()));
+                    }
+                }
+            } else {
+                // 每个效果按剩余预算 / 剩余效果数领取份额，需求小或无人可见的效果让出的余量留给后面的效果
+                int remaining = limit;
+                int start = cursor % size;
+                for (int n = 0; n < size; n++) {
+                    ActiveEffect effect = effects.get((start + n) % size);
+                    if (!quality.sends(effect.ticks) || !collectViewers(effect) || !writeFrame(effect)) continue;
+                    int share = remaining / (size - n);
+                    if (share == 0 && remaining > 0) {
+                        share = 1;
+                    }
+                    int emitted = flush(effect, Math.min(quality.points(buffer.size()), share));
+                    remaining -= emitted;
+                    sent += emitted;
+                }
+                cursor = start + 1;
+            }
+            if (regional) {
+                regionParticles.add(sent);
+            } else {
+                particlesLastTick = sent;
+            }
+
+            // 推进帧并移除已结束的效果
+            int alive = 0;
+            for (int i = 0; i < size; i++) {
+                ActiveEffect effect = effects.get(i);
+                if (++effect.ticks < effect.duration) {
+                    effects.set(alive++, effect);
+                }
+            }
+            for (int i = size - 1; i >= alive; i--) {
+                effects.remove(i);
+            }
+            active = alive;
+            viewers.clear();
+        }
+
+        void cancel() {
+            TaskScheduler.Task scheduled = task;
+            if (scheduled != null) {
+                scheduled.cancel();
+            }
+            regionLanes.remove(section, this);
+        }
+
+        /**
+         * 收集能看到该效果的玩家到 viewers，没有观看者时返回 false
+         */
+        private boolean collectViewers(ActiveEffect effect) {
+            viewers.clear();
+
+            double rangeSquared = PARTICLE_VIEW_RANGE * PARTICLE_VIEW_RANGE;
+            int effectChunkX = (int) Math.floor(effect.originX) >> 4;
+            int effectChunkZ = (int) Math.floor(effect.originZ) >> 4;
+            List<Player> players = playersIn(effect.world);
+            for (int i = 0, count = players.size(); i < count; i++) {
+                Player player = players.get(i);
+                if (!optedOut.isEmpty() && optedOut.contains(player.getUniqueId())) continue;
+                // 区域线程只向本区域内的玩家发送
+                if (regional && !Bukkit.isOwnedByCurrentRegion(player)) continue;
+
+                Location loc = player.getLocation(scratch);
+                double dx = loc.getX() - effect.originX;
+                double dy = loc.getY() - effect.originY;
+                double dz = loc.getZ() - effect.originZ;
+                if (dx * dx + dy * dy + dz * dz > rangeSquared) continue;
+
+                if (cullFarChunks) {
+                    int viewDistance = Math.min(player.getClientViewDistance(), player.getViewDistance());
+                    if (Math.abs((loc.getBlockX() >> 4) - effectChunkX) > viewDistance
+                            || Math.abs((loc.getBlockZ() >> 4) - effectChunkZ) > viewDistance) {
+                        continue;
+                    }
+                }
+                viewers.add(player);
+            }
+            return !viewers.isEmpty();
+        }
+
+        /**
+         * 世界中的玩家，同一 tick 内只向服务端获取一次
+         */
+        private List<Player> playersIn(World world) {
+            for (int i = 0, count = worlds.size(); i < count; i++) {
+                if (worlds.get(i) == world) {
+                    return worldPlayers.get(i);
+                }
+            }
+            List<Player> players = world.getPlayers();
+            worlds.add(world);
+            worldPlayers.add(players);
+            return players;
+        }
+
+        /**
+         * 让生成器把当前帧写入通道缓冲区，空帧返回 false
+         */
+        private boolean writeFrame(ActiveEffect effect) {
+            buffer.reset();
+            effect.generator.writeFrame(effect.ticks, buffer);
+            return buffer.size() > 0;
+        }
+
+        /**
+         * 把缓冲区中的 quota 个点按观看者批量发送，超出份额时按等间距抽样丢弃其余点。
+         * 相邻的相同点合并为一次 count > 1 的发送
+         */
+        private int flush(ActiveEffect effect, int quota) {
+            int total = buffer.size();
+            if (quota <= 0) return 0;
+            if (quota > total) quota = total;
+
+            double originX = effect.originX;
+            double originY = effect.originY;
+            double originZ = effect.originZ;
+            for (int v = 0, viewerCount = viewers.size(); v < viewerCount; v++) {
+                Player viewer = viewers.get(v);
+                int pending = -1;
+                int count = 0;
+                for (int k = 0; k < quota; k++) {
+                    int i = (int) ((long) k * total / quota);
+                    if (pending >= 0 && samePoint(pending, i)) {
+                        count++;
+                        continue;
+                    }
+                    if (pending >= 0) {
+                        send(viewer, pending, count, originX, originY, originZ);
+                    }
+                    pending = i;
+                    count = 1;
+                }
+                if (pending >= 0) {
+                    send(viewer, pending, count, originX, originY, originZ);
+                }
+            }
+            return quota;
+        }
+
+        private boolean samePoint(int a, int b) {
+            return buffer.particleAt(a) == buffer.particleAt(b)
+                    && buffer.dataAt(a) == buffer.dataAt(b)
+                    && buffer.x(a) == buffer.x(b)
+                    && buffer.y(a) == buffer.y(b)
+                    && buffer.z(a) == buffer.z(b)
+                    && buffer.spreadX(a) == buffer.spreadX(b)
+                    && buffer.spreadY(a) == buffer.spreadY(b)
+                    && buffer.spreadZ(a) == buffer.spreadZ(b)
+                    && buffer.speedAt(a) == buffer.speedAt(b);
+        }
+
+        private void send(Player viewer, int index, int count, double originX, double originY, double originZ) {
+            viewer.spawnParticle(buffer.particleAt(index),
+                    originX + buffer.x(index), originY + buffer.y(index), originZ + buffer.z(index),
+                    count, buffer.spreadX(index), buffer.spreadY(index), buffer.spreadZ(index),
+                    buffer.speedAt(index), buffer.dataAt(index));
+        }
+    }
+
+    /**
+     * 区域块坐标
+     */
+    private static final class Section {
+        final World world;
+        final int x;
+        final int z;
+
+        Section(World world, int x, int z) {
+            this.world = world;
+            this.x = x;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Section)) return false;
+            Section section = (Section) other;
+            return section.world == world && section.x == x && section.z == z;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(world) + x) + z;
+        }
+    }
+
+    /**
+     * 单个进行中的效果
+     */
+    private static final class ActiveEffect {
+        final World world;
+        final double originX;
+        final double originY;
+        final double originZ;
+        final PartnerPlugin.FrameGenerator generator;
+        final int duration;
+        int ticks;
+
+        ActiveEffect(World world, double originX, double originY, double originZ,
+                     PartnerPlugin.FrameGenerator generator, int duration) {
+            this.world = world;
+            this.originX = originX;
+            this.originY = originY;
+            this.originZ = originZ;
+            this.generator = generator;
+            this.duration = duration;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.y4vyq.partnerplugin;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * 按到期时间排序的伙伴寿命队列
+ * 所有伙伴共用一个最小堆，由插件的单个重复任务每 tick 取出已到期的主人；
+ * 重新计时或取消时不在堆中查找删除，旧条目在出堆时按“是否仍是当前条目”丢弃。
+ * 时间单位为服务器 tick；所有方法同步，可在多个区域线程调用
+ */
+final class ExpiryQueue {
+
+    // 失效条目超过有效条目的该倍数时重建堆
+    private static final int REBUILD_RATIO = 2;
+    private static final int REBUILD_MIN = 64;
+
+    private static final class Entry implements Comparable<Entry> {
+        final UUID owner;
+        final int deadline;
+
+        Entry(UUID owner, int deadline) {
+            this.owner = owner;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            // 按差值比较，tick 计数溢出时顺序仍然正确
+            return Integer.compare(deadline - other.deadline, 0);
+        }
+    }
+
+    private final PriorityQueue<Entry> heap = new PriorityQueue<>();
+    private final Map<UUID, Entry> current = new HashMap<>();
+
+    /**
+     * 安排 owner 在 deadline tick 到期，已有计时会被替换
+     */
+    synchronized void schedule(UUID owner, int deadline) {
+        Entry entry = new Entry(owner, deadline);
+        current.put(owner, entry);
+        heap.add(entry);
+        if (heap.size() > REBUILD_MIN && heap.size() > current.size() * REBUILD_RATIO) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 取消 owner 的计时
+     */
+    synchronized void cancel(UUID owner) {
+        current.remove(owner);
+    }
+
+    synchronized boolean contains(UUID owner) {
+        return current.containsKey(owner);
+    }
+
+    /**
+     * 剩余 tick 数，没有计时返回 -1，已到期返回 0
+     */
+    synchronized int remaining(UUID owner, int now) {
+        Entry entry = current.get(owner);
+        if (entry == null) return -1;
+        return Math.max(0, entry.deadline - now);
+    }
+
+    /**
+     * 取出所有在 now 之前（含）到期的主人并交给 expired 处理
+     */
+    synchronized void expire(int now, Consumer<UUID> expired) {
+        Entry head;
+        while ((head = heap.peek()) != null && head.deadline - now <= 0) {
+            heap.poll();
+            if (current.get(head.owner) != head) continue;
+            current.remove(head.owner);
+            expired.accept(head.owner);
+        }
+    }
+
+    synchronized int size() {
+        return current.size();
+    }
+
+    synchronized void clear() {
+        heap.clear();
+        current.clear();
+    }
+
+    private void rebuild() {
+        heap.clear();
+        heap.addAll(current.values());
+    }
+}
@@ -0,0 +1,105 @@
+package com.y4vyq.partnerplugin;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 区域多线程服务端（Folia）的调度实现
+ * 实体任务走实体调度器，位置任务走区域调度器，全局任务走全局区域调度器；
+ * 全局时钟由全局区域上的计数任务维护，不依赖主线程 tick
+ */
+final class FoliaTaskScheduler implements TaskScheduler {
+
+    private static final String REGIONIZED_SERVER = "io.papermc.paper.threadedregions.RegionizedServer";
+
+    private final Plugin plugin;
+    private final AtomicInteger clock = new AtomicInteger();
+    private ScheduledTask clockTask;
+
+    FoliaTaskScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 当前服务端是否为 Folia
+     */
+    static boolean isSupported() {
+        try {
+            Class.forName(REGIONIZED_SERVER);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isRegionized() {
+        return true;
+    }
+
+    @Override
+    public int currentTick() {
+        return clock.get();
+    }
+
+    @Override
+    public void start() {
+        if (clockTask == null) {
+            clockTask = Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, task -> clock.incrementAndGet(), 1, 1);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        clockTask = null;
+        Bukkit.getGlobalRegionScheduler().cancelTasks(plugin);
+        Bukkit.getAsyncScheduler().cancelTasks(plugin);
+    }
+
+    @Override
+    public void run(Runnable task) {
+        Bukkit.getGlobalRegionScheduler().execute(plugin, task);
+    }
+
+    @Override
+    public Task runRepeating(Runnable task, long delay, long period) {
+        ScheduledTask scheduled = Bukkit.getGlobalRegionScheduler()
+                .runAtFixedRate(plugin, t -> task.run(), Math.max(1, delay), period);
+        return scheduled::cancel;
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getAsyncScheduler().runNow(plugin, t -> task.run());
+    }
+
+    @Override
+    public void runAt(Location location, Runnable task) {
+        if (Bukkit.isOwnedByCurrentRegion(location)) {
+            task.run();
+        } else {
+            Bukkit.getRegionScheduler().execute(plugin, location, task);
+        }
+    }
+
+    @Override
+    public Task runAtRepeating(Location location, Runnable task, long delay, long period) {
+        ScheduledTask scheduled = Bukkit.getRegionScheduler()
+                .runAtFixedRate(plugin, location, t -> task.run(), Math.max(1, delay), period);
+        return scheduled::cancel;
+    }
+
+    @Override
+    public void runFor(Entity entity, Runnable task) {
+        if (Bukkit.isOwnedByCurrentRegion(entity)) {
+            task.run();
+        } else {
+            entity.getScheduler().execute(plugin, task, null, 1);
+        }
+    }
+}
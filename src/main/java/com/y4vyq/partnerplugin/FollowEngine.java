@@ -0,0 +1,261 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Mob;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 伙伴跟随引擎
+ * 所有跟随中的伙伴分散到若干个桶里，每 tick 只检查其中一个桶，
+ * 因此每个伙伴每隔 check-interval tick 检查一次，单 tick 的开销不随伙伴总数集中爆发。
+ * 距离判断只用平方距离：超过跟随距离时用寻路靠近主人，超过传送距离时直接传送到主人身边。
+ * 每次检查同时记录伙伴所在区块，跨越区块边界时才更新区块空间索引(关闭跟随时也照常检查位置)。
+ * 区域多线程服务端上每个伙伴的检查交给其所属区域执行，分桶结构由引擎锁保护
+ */
+final class FollowEngine implements Runnable {
+
+    /**
+     * 跟随中的伙伴及其所在的桶位置
+     */
+    private static final class Follower {
+        final UUID owner;
+        final LivingEntity partner;
+        // 复用的坐标缓冲，避免每次检查分配
+        final Location ownerLoc = new Location(null, 0, 0, 0);
+        final Location partnerLoc = new Location(null, 0, 0, 0);
+        // 上次写入区块索引时伙伴所在的世界与区块，只在伙伴所属线程读写
+        World world;
+        long chunk;
+        // 主人在其他区域时交给主人所在线程的检查，以及当时伙伴的位置(提交任务前写入)
+        final Runnable remoteCheck;
+        final Location remoteOwnerLoc = new Location(null, 0, 0, 0);
+        World remoteWorld;
+        double remoteX;
+        double remoteY;
+        double remoteZ;
+        // 停止跟随后尚未执行的跨区域检查不再传送伙伴(如传送交接已接管)
+        volatile boolean tracked = true;
+        int bucket;
+        int index;
+
+        Follower(FollowEngine engine, UUID owner, LivingEntity partner) {
+            this.owner = owner;
+            this.partner = partner;
+            this.remoteCheck = () -> engine.followRemote(this);
+        }
+    }
+
+    private final TaskScheduler scheduler;
+    private final PartnerMetrics metrics;
+    private final PartnerGrid grid;
+    private final Map<UUID, Follower> followers = new HashMap<>();
+    private List<List<Follower>> buckets = new ArrayList<>();
+    private TaskScheduler.Task task;
+    private int tick;
+
+    private volatile boolean enabled;
+    private volatile boolean avoidWater;
+    private volatile double followDistanceSq;
+    private volatile double teleportDistanceSq;
+    private volatile double speed;
+
+    FollowEngine(TaskScheduler scheduler, PartnerMetrics metrics, PartnerGrid grid) {
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.grid = grid;
+    }
+
+    /**
+     * 按配置快照更新跟随参数，检查间隔变化时重新分桶
+     */
+    synchronized void configure(PartnerConfig settings) {
+        enabled = settings.followOwner;
+        avoidWater = settings.avoidWater;
+        followDistanceSq = settings.followDistance * settings.followDistance;
+        teleportDistanceSq = settings.teleportDistance * settings.teleportDistance;
+        speed = settings.followSpeed;
+
+        if (buckets.size() != settings.followCheckInterval) {
+            buckets = new ArrayList<>(settings.followCheckInterval);
+            for (int i = 0; i < settings.followCheckInterval; i++) {
+                buckets.add(new ArrayList<>());
+            }
+            for (Follower follower : followers.values()) {
+                insert(follower);
+            }
+            tick = 0;
+        }
+    }
+
+    void start() {
+        if (task == null) {
+            task = scheduler.runRepeating(this, 1, 1);
+        }
+    }
+
+    void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        clear();
+    }
+
+    /**
+     * 开始跟随，已有的跟随会被替换
+     */
+    synchronized void track(UUID owner, LivingEntity partner) {
+        untrack(owner);
+        Follower follower = new Follower(this, owner, partner);
+        followers.put(owner, follower);
+        insert(follower);
+    }
+
+    /**
+     * 停止跟随
+     */
+    synchronized void untrack(UUID owner) {
+        Follower follower = followers.remove(owner);
+        if (follower == null) return;
+        follower.tracked = false;
+
+        // 与桶尾交换后删除，O(1)
+        List<Follower> bucket = buckets.get(follower.bucket);
+        Follower last = bucket.remove(bucket.size() - 1);
+        if (last != follower) {
+            bucket.set(follower.index, last);
+            last.index = follower.index;
+        }
+    }
+
+    synchronized int size() {
+        return followers.size();
+    }
+
+    synchronized void clear() {
+        for (Follower follower : followers.values()) {
+            follower.tracked = false;
+        }
+        followers.clear();
+        for (List<Follower> bucket : buckets) {
+            bucket.clear();
+        }
+    }
+
+    @Override
+    public synchronized void run() {
+        if (followers.isEmpty()) return;
+
+        long start = metrics.start();
+        List<Follower> bucket = buckets.get(tick);
+        tick = (tick + 1) % buckets.size();
+        boolean regionized = scheduler.isRegionized();
+        for (int i = 0; i < bucket.size(); i++) {
+            Follower follower = bucket.get(i);
+            if (regionized) {
+                scheduler.runFor(follower.partner, () -> follow(follower));
+            } else {
+                follow(follower);
+            }
+        }
+        metrics.stop(PartnerMetrics.Probe.FOLLOW_TICK, start);
+    }
+
+    /**
+     * 检查单个伙伴（在拥有伙伴实体的线程执行）
+     */
+    private void follow(Follower follower) {
+        LivingEntity partner = follower.partner;
+        if (!partner.isValid()) return;
+        Location partnerLoc = partner.getLocation(follower.partnerLoc);
+        long chunk = PartnerGrid.chunkKey(partnerLoc.getBlockX() >> 4, partnerLoc.getBlockZ() >> 4);
+        if (chunk != follower.chunk || partnerLoc.getWorld() != follower.world) {
+            follower.world = partnerLoc.getWorld();
+            follower.chunk = chunk;
+            grid.update(follower.owner, partnerLoc);
+        }
+        if (!enabled) return;
+        Player owner = Bukkit.getPlayer(follower.owner);
+        if (owner == null) return;
+
+        // 主人在其他区域时只能在主人所在线程读取其位置
+        if (scheduler.isRegionized() && !Bukkit.isOwnedByCurrentRegion(owner)) {
+            follower.remoteWorld = partnerLoc.getWorld();
+            follower.remoteX = partnerLoc.getX();
+            follower.remoteY = partnerLoc.getY();
+            follower.remoteZ = partnerLoc.getZ();
+            scheduler.runFor(owner, follower.remoteCheck);
+            return;
+        }
+
+        Location ownerLoc = owner.getLocation(follower.ownerLoc);
+        // 跨世界由传送事件处理
+        if (ownerLoc.getWorld() != partnerLoc.getWorld()) return;
+
+        double distanceSq = ownerLoc.distanceSquared(partnerLoc);
+        if (distanceSq <= followDistanceSq) return;
+
+        // 主人在水中时不跟进
+        if (avoidWater && owner.isInWater()) return;
+
+        if (distanceSq > teleportDistanceSq) {
+            if (avoidWater && ownerLoc.getBlock().isLiquid()) return;
+            partner.teleportAsync(ownerLoc.clone());
+        } else if (partner instanceof Mob) {
+            ((Mob) partner).getPathfinder().moveTo(owner, speed);
+        }
+    }
+
+    /**
+     * 主人与伙伴不在同一区域时的检查（在拥有主人的线程执行）
+     * 不同区域之间无法寻路，只在超过传送距离时把伙伴传送到主人身边
+     */
+    private void followRemote(Follower follower) {
+        if (!enabled || !follower.tracked) return;
+        Player owner = Bukkit.getPlayer(follower.owner);
+        if (owner == null) return;
+
+        Location ownerLoc = owner.getLocation(follower.remoteOwnerLoc);
+        // 跨世界由传送事件处理
+        if (ownerLoc.getWorld() != follower.remoteWorld) return;
+
+        double dx = ownerLoc.getX() - follower.remoteX;
+        double dy = ownerLoc.getY() - follower.remoteY;
+        double dz = ownerLoc.getZ() - follower.remoteZ;
+        if (dx * dx + dy * dy + dz * dz <= teleportDistanceSq) return;
+
+        if (avoidWater && (owner.isInWater() || ownerLoc.getBlock().isLiquid())) return;
+        Location target = ownerLoc.clone();
+        LivingEntity partner = follower.partner;
+        scheduler.runFor(partner, () -> {
+            if (follower.tracked) {
+                partner.teleportAsync(target);
+            }
+        });
+    }
+
+    /**
+     * 放入当前最空的桶
+     */
+    private void insert(Follower follower) {
+        int target = 0;
+        for (int i = 1; i < buckets.size(); i++) {
+            if (buckets.get(i).size() < buckets.get(target).size()) {
+                target = i;
+            }
+        }
+        List<Follower> bucket = buckets.get(target);
+        follower.bucket = target;
+        follower.index = bucket.size();
+        bucket.add(follower);
+    }
+}
@@ -0,0 +1,463 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.Color;
+import org.bukkit.Particle;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * 由 effects.yml 声明的关键帧粒子效果
+ * 加载时把每一层的形状、关键帧插值、颜色一次性预计算为逐帧的紧凑坐标数组：
+ * 形状取自 {@link ShapeCache} 的单位形状，按每帧插值出的半径、高度、旋转与振幅缩放和旋转。
+ * 彩色粒子的 DustOptions 也提前构建并在所有帧间共享；播放时只按帧下标顺序读取数组写入缓冲区。
+ * 图层的 spread(随机散布)与 speed(粒子速度)原样传给 spawnParticle
+ */
+final class KeyframeEffect implements PartnerPlugin.FrameGenerator {
+
+    // 单层预计算的点数上限(点数 × 帧数)，防止配置错误占用过多内存
+    private static final int MAX_LAYER_POINTS = 200_000;
+    private static final int MAX_DURATION = 1200;
+
+    /**
+     * 点的分布形状
+     */
+    enum Shape {
+        RING, CIRCLE, SPIRAL, WAVE, BURST, POINT
+    }
+
+    private final String name;
+    private final int duration;
+    private final Layer[] layers;
+
+    private KeyframeEffect(String name, int duration, Layer[] layers) {
+        this.name = name;
+        this.duration = duration;
+        this.layers = layers;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    @Override
+    public int getDuration() {
+        return duration;
+    }
+
+    @Override
+    public void writeFrame(int tick, ParticleBuffer buffer) {
+        int frame = tick % duration;
+        for (Layer layer : layers) {
+            int start = layer.frameStart[frame];
+            int end = layer.frameStart[frame + 1];
+            if (start == end) continue;
+
+            buffer.particle(layer.particle, layer.data);
+            buffer.spread(layer.spreadX, layer.spreadY, layer.spreadZ);
+            buffer.speed(layer.speed);
+            float[] coords = layer.coords;
+            for (int i = start * 3, stop = end * 3; i < stop; i += 3) {
+                buffer.add(coords[i], coords[i + 1], coords[i + 2]);
+            }
+        }
+    }
+
+    /**
+     * 单个图层：一种粒子与其逐帧的点
+     * 第 f 帧的点为 coords 中下标 [frameStart[f], frameStart[f + 1]) 的 xyz 三元组
+     */
+    private static final class Layer {
+        final Particle particle;
+        final Object data;
+        final double spreadX;
+        final double spreadY;
+        final double spreadZ;
+        final double speed;
+        final float[] coords;
+        final int[] frameStart;
+
+        Layer(Particle particle, Object data, double[] spread, double speed, float[] coords, int[] frameStart) {
+            this.particle = particle;
+            this.data = data;
+            this.spreadX = spread[0];
+            this.spreadY = spread[1];
+            this.spreadZ = spread[2];
+            this.speed = speed;
+            this.coords = coords;
+            this.frameStart = frameStart;
+        }
+    }
+
+    /**
+     * 关键帧：tick 时刻的半径、高度、旋转角(度)与振幅，相邻关键帧之间线性插值
+     */
+    private static final class Keyframe {
+        final int tick;
+        final double radius;
+        final double height;
+        final double rotation;
+        final double amplitude;
+
+        Keyframe(int tick, double radius, double height, double rotation, double amplitude) {
+            this.tick = tick;
+            this.radius = radius;
+            this.height = height;
+            this.rotation = rotation;
+            this.amplitude = amplitude;
+        }
+    }
+
+    // ================== 编译 ================== //
+
+    /**
+     * 编译 effects 节下的所有效果，无效的效果记录警告后跳过
+     */
+    static Map<String, KeyframeEffect> compileAll(ConfigurationSection effects, Logger logger) {
+        if (effects == null) return Collections.emptyMap();
+        Map<String, KeyframeEffect> compiled = new LinkedHashMap<>();
+        for (String key : effects.getKeys(false)) {
+            KeyframeEffect effect = compile(key, effects.getConfigurationSection(key), logger);
+            if (effect != null) {
+                compiled.put(effect.name, effect);
+            }
+        }
+        return Collections.unmodifiableMap(compiled);
+    }
+
+    /**
+     * 编译单个效果定义；效果节本身即可作为唯一图层，也可以在 layers 列表中定义多个图层，
+     * 图层中未设置的字段继承效果节的值。定义无效时返回 null
+     */
+    static KeyframeEffect compile(String name, ConfigurationSection section, Logger logger) {
+        if (section == null) return null;
+        String effectName = name.toLowerCase(Locale.ROOT);
+        int duration = Math.min(MAX_DURATION, section.getInt("duration", 20));
+        if (duration <= 0) {
+            logger.warning("粒子效果 " + name + " 的 duration 必须大于 0，已忽略");
+            return null;
+        }
+
+        List<Map<?, ?>> layerList = section.getMapList("layers");
+        List<Layer> layers = new ArrayList<>();
+        if (layerList.isEmpty()) {
+            Layer layer = compileLayer(name, section, null, duration, logger);
+            if (layer != null) layers.add(layer);
+        } else {
+            for (Map<?, ?> layerMap : layerList) {
+                Layer layer = compileLayer(name, section, layerMap, duration, logger);
+                if (layer != null) layers.add(layer);
+            }
+        }
+        if (layers.isEmpty()) {
+            logger.warning("粒子效果 " + name + " 没有有效的图层，已忽略");
+            return null;
+        }
+        return new KeyframeEffect(effectName, duration, layers.toArray(new Layer[0]));
+    }
+
+    /**
+     * 编译只有一个图层、一个关键帧的简单效果（兼容 config.yml 中旧版的消失粒子配置）
+     */
+    static KeyframeEffect simple(String name, Shape shape, Particle particle, int points, double radius,
+                                 double height, int duration, double spread, double speed, Logger logger) {
+        Map<String, Object> layer = new LinkedHashMap<>();
+        layer.put("shape", shape.name());
+        layer.put("particle", particle.name());
+        layer.put("points", points);
+        layer.put("radius", radius);
+        layer.put("height", height);
+        layer.put("spread", spread);
+        layer.put("speed", speed);
+        int frames = Math.max(1, Math.min(MAX_DURATION, duration));
+        Layer compiled = compileLayer(name, null, layer, frames, logger);
+        return compiled == null ? null : new KeyframeEffect(name, frames, new Layer[]{compiled});
+    }
+
+    private static Layer compileLayer(String name, ConfigurationSection effect, Map<?, ?> layer,
+                                      int duration, Logger logger) {
+        Values values = new Values(effect, layer);
+
+        Shape shape = parseEnum(Shape.class, values.string("shape", "ring"), null);
+        if (shape == null) {
+            logger.warning("粒子效果 " + name + " 的形状无效: " + values.string("shape", "") + "，使用 ring");
+            shape = Shape.RING;
+        }
+        Particle particle = parseEnum(Particle.class, values.string("particle", "FLAME"), null);
+        if (particle == null) {
+            logger.warning("粒子效果 " + name + " 的粒子类型无效: " + values.string("particle", "") + "，使用 FLAME");
+            particle = Particle.FLAME;
+        }
+
+        // 彩色粒子预先构建 DustOptions，其他需要数据的粒子无法由配置描述
+        Object data = null;
+        Class<?> dataType = particle.getDataType();
+        if (dataType == Particle.DustOptions.class) {
+            Color color = parseColor(values.raw("color"));
+            data = new Particle.DustOptions(color != null ? color : Color.fromRGB(255, 255, 255),
+                    (float) values.decimal("size", 1.0));
+        } else if (dataType != Void.class) {
+            logger.warning("粒子效果 " + name + " 的粒子 " + particle + " 需要额外数据，已跳过该图层");
+            return null;
+        }
+
+        // config.yml 中的简写配置使用 count 表示粒子数
+        int points = Math.max(0, values.integer("points", values.integer("count", 40)));
+        long total = (long) points * duration;
+        if (total > MAX_LAYER_POINTS) {
+            points = Math.max(1, MAX_LAYER_POINTS / duration);
+            logger.warning("粒子效果 " + name + " 的点数过多，已限制为每帧 " + points + " 个点");
+        }
+        double turns = values.decimal("turns", 1.0);
+        int waves = Math.max(1, values.integer("waves", 4));
+        int rings = Math.max(1, values.integer("rings", 5));
+        double[] spread = parseSpread(values.raw("spread"));
+        double speed = values.decimal("speed", 1.0);
+        ShapeCache.Shape unit = points > 0 ? unitShape(shape, points, turns, rings) : null;
+        if (unit != null) {
+            points = unit.pointCount();
+        }
+
+        List<Keyframe> keyframes = parseKeyframes(values, duration);
+        int first = keyframes.get(0).tick;
+        int last = keyframes.size() == 1 ? duration - 1 : keyframes.get(keyframes.size() - 1).tick;
+
+        float[] coords = new float[(int) Math.min(total, MAX_LAYER_POINTS) * 3];
+        int[] frameStart = new int[duration + 1];
+        int size = 0;
+        int segment = 0;
+        for (int f = 0; f < duration; f++) {
+            if (f >= first && f <= last && points > 0) {
+                while (segment + 1 < keyframes.size() && keyframes.get(segment + 1).tick <= f) {
+                    segment++;
+                }
+                Keyframe from = keyframes.get(segment);
+                Keyframe to = segment + 1 < keyframes.size() ? keyframes.get(segment + 1) : from;
+                double t = to.tick == from.tick ? 0 : (double) (f - from.tick) / (to.tick - from.tick);
+                double radius = lerp(from.radius, to.radius, t);
+                double height = lerp(from.height, to.height, t);
+                double rotation = Math.toRadians(lerp(from.rotation, to.rotation, t));
+                double amplitude = lerp(from.amplitude, to.amplitude, t);
+                double cos = Math.cos(rotation);
+                double sin = Math.sin(rotation);
+
+                for (int i = 0; i < points; i++) {
+                    size = writePoint(coords, size, shape, unit, i, radius, height, cos, sin, amplitude, waves);
+                }
+            }
+            frameStart[f + 1] = size;
+        }
+        return new Layer(particle, data, spread, speed, Arrays.copyOf(coords, size * 3), frameStart);
+    }
+
+    /**
+     * 形状对应的单位形状；多层圆环每层点数相同，除不尽的点被舍去
+     */
+    private static ShapeCache.Shape unitShape(Shape shape, int points, double turns, int rings) {
+        switch (shape) {
+            case CIRCLE:
+                return ShapeCache.stackedRings(Math.max(1, points / rings), 1.0, rings);
+            case SPIRAL:
+                return ShapeCache.unitHelix(points, turns);
+            case BURST:
+                return ShapeCache.unitSphere(points);
+            default:
+                return ShapeCache.unitRing(points);
+        }
+    }
+
+    /**
+     * 把单位形状中第 i 个点按本帧参数变换后写入 coords，返回写入后的点数。
+     * (cos, sin) 为本帧旋转角，水平面内的旋转由单位点按旋转矩阵得到
+     */
+    private static int writePoint(float[] coords, int size, Shape shape, ShapeCache.Shape unit, int i,
+                                  double radius, double height, double cos, double sin, double amplitude,
+                                  int waves) {
+        double ux = unit.x[i];
+        double uz = unit.z[i];
+        double x;
+        double y;
+        double z;
+        switch (shape) {
+            case CIRCLE:
+                // 多层圆环，amplitude 为总高度
+            case SPIRAL:
+                // 绕 turns 圈上升 amplitude 格
+                x = radius * (ux * cos - uz * sin);
+                y = height + amplitude * unit.y[i];
+                z = radius * (ux * sin + uz * cos);
+                break;
+            case WAVE: {
+                // 圆环上叠加 waves 个波峰，rotation 推动波形沿圆环前进：
+                // sin(waves·θ + rotation) 由单位圆环上第 waves·i 个点的 sin/cos 展开得到
+                int j = (int) ((long) waves * i % unit.pointCount());
+                x = radius * ux;
+                y = height + amplitude * (unit.z[j] * cos + unit.x[j] * sin);
+                z = radius * uz;
+                break;
+            }
+            case BURST:
+                // 球面上均匀分布的点
+                x = radius * (ux * cos - uz * sin);
+                y = height + radius * unit.y[i];
+                z = radius * (ux * sin + uz * cos);
+                break;
+            case POINT:
+                // 所有点位于原点上方 height 处，通常配合 spread 使用
+                x = 0;
+                y = height;
+                z = 0;
+                break;
+            default:
+                x = radius * (ux * cos - uz * sin);
+                y = height;
+                z = radius * (ux * sin + uz * cos);
+                break;
+        }
+        int offset = size * 3;
+        coords[offset] = (float) x;
+        coords[offset + 1] = (float) y;
+        coords[offset + 2] = (float) z;
+        return size + 1;
+    }
+
+    /**
+     * 散布范围支持单个数字(三个轴相同)或 {x, y, z} 映射/配置节，未设置时为 0
+     */
+    private static double[] parseSpread(Object raw) {
+        if (raw instanceof Number || raw instanceof String) {
+            double spread;
+            try {
+                spread = Math.max(0, Double.parseDouble(raw.toString()));
+            } catch (NumberFormatException e) {
+                spread = 0;
+            }
+            return new double[]{spread, spread, spread};
+        }
+        Values xyz;
+        if (raw instanceof ConfigurationSection) {
+            xyz = new Values((ConfigurationSection) raw, null);
+        } else if (raw instanceof Map) {
+            xyz = new Values(null, (Map<?, ?>) raw);
+        } else {
+            return new double[3];
+        }
+        return new double[]{Math.max(0, xyz.decimal("x", 0)), Math.max(0, xyz.decimal("y", 0)),
+                Math.max(0, xyz.decimal("z", 0))};
+    }
+
+    /**
+     * 读取关键帧列表并按 tick 排序；没有关键帧时用图层自身的 radius/height/rotation/amplitude 作为唯一关键帧
+     */
+    private static List<Keyframe> parseKeyframes(Values values, int duration) {
+        double radius = values.decimal("radius", 1.5);
+        double height = values.decimal("height", 0.0);
+        double rotation = values.decimal("rotation", 0.0);
+        double amplitude = values.decimal("amplitude", 0.5);
+
+        List<Keyframe> keyframes = new ArrayList<>();
+        Object raw = values.raw("keyframes");
+        if (raw instanceof List) {
+            for (Object item : (List<?>) raw) {
+                if (!(item instanceof Map)) continue;
+                Values frame = new Values(null, (Map<?, ?>) item);
+                int tick = Math.max(0, Math.min(duration - 1, frame.integer("tick", 0)));
+                keyframes.add(new Keyframe(tick, frame.decimal("radius", radius), frame.decimal("height", height),
+                        frame.decimal("rotation", rotation), frame.decimal("amplitude", amplitude)));
+            }
+        }
+        if (keyframes.isEmpty()) {
+            keyframes.add(new Keyframe(0, radius, height, rotation, amplitude));
+        }
+        keyframes.sort((a, b) -> Integer.compare(a.tick, b.tick));
+        return keyframes;
+    }
+
+    private static double lerp(double from, double to, double t) {
+        return from + (to - from) * t;
+    }
+
+    /**
+     * 颜色支持 "#RRGGBB" 字符串或 {r, g, b} 映射/配置节
+     */
+    private static Color parseColor(Object raw) {
+        if (raw instanceof String) {
+            String text = ((String) raw).trim();
+            if (text.startsWith("#")) text = text.substring(1);
+            try {
+                return Color.fromRGB(Integer.parseInt(text, 16) & 0xFFFFFF);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        Values rgb;
+        if (raw instanceof ConfigurationSection) {
+            rgb = new Values((ConfigurationSection) raw, null);
+        } else if (raw instanceof Map) {
+            rgb = new Values(null, (Map<?, ?>) raw);
+        } else {
+            return null;
+        }
+        return Color.fromRGB(clamp(rgb.integer("r", 255)), clamp(rgb.integer("g", 255)), clamp(rgb.integer("b", 255)));
+    }
+
+    private static int clamp(int channel) {
+        return Math.max(0, Math.min(255, channel));
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value, E fallback) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * 按“图层映射优先，其次效果节”的顺序读取字段
+     */
+    private static final class Values {
+        private final ConfigurationSection section;
+        private final Map<?, ?> map;
+
+        Values(ConfigurationSection section, Map<?, ?> map) {
+            this.section = section;
+            this.map = map;
+        }
+
+        Object raw(String key) {
+            if (map != null && map.containsKey(key)) return map.get(key);
+            if (section == null || !section.isSet(key)) return null;
+            if (section.isConfigurationSection(key)) return section.getConfigurationSection(key);
+            if (section.isList(key)) return section.getMapList(key);
+            return section.getString(key);
+        }
+
+        String string(String key, String def) {
+            Object value = raw(key);
+            return value == null ? def : value.toString();
+        }
+
+        double decimal(String key, double def) {
+            Object value = raw(key);
+            if (value instanceof Number) return ((Number) value).doubleValue();
+            if (value == null) return def;
+            try {
+                return Double.parseDouble(value.toString());
+            } catch (NumberFormatException e) {
+                return def;
+            }
+        }
+
+        int integer(String key, int def) {
+            return (int) decimal(key, def);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.y4vyq.partnerplugin;
+
+import java.util.Arrays;
+
+/**
+ * 以 long 为键的开放寻址哈希表
+ * 键不装箱，查找未命中时只需一次哈希与少量数组访问，适合在高频事件中做否定判断。
+ * 值不能为 null；非线程安全
+ */
+final class LongObjectMap<V> extends OpenHashTable {
+
+    private long[] keys;
+    private Object[] values;
+
+    LongObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    LongObjectMap(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        if (size == 0) return null;
+        int slot = slot(key);
+        Object value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key) {
+                return (V) value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value");
+        }
+        int slot = slot(key);
+        Object existing;
+        while ((existing = values[slot]) != null) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return (V) existing;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (mask + 1) * 3 / 4) {
+            rehash((mask + 1) << 1);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        if (size == 0) return null;
+        int slot = slot(key);
+        Object value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key) {
+                removeAt(slot);
+                return (V) value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    void clear() {
+        if (size == 0) return;
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * 遍历所有键值对
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(Visitor<? super V> visitor) {
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value != null) {
+                visitor.visit(keys[i], (V) value);
+            }
+        }
+    }
+
+    interface Visitor<V> {
+        void visit(long key, V value);
+    }
+
+    @Override
+    boolean occupied(int slot) {
+        return values[slot] != null;
+    }
+
+    @Override
+    int home(int slot) {
+        return slot(keys[slot]);
+    }
+
+    @Override
+    void move(int from, int to) {
+        keys[to] = keys[from];
+        values[to] = values[from];
+    }
+
+    @Override
+    void vacate(int slot) {
+        values[slot] = null;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            Object value = oldValues[i];
+            if (value != null) {
+                int slot = slot(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * 编译后的消息目录
+ * 加载配置时把 messages.* 与 help.yml 中的每条消息转换颜色代码、拼上前缀，并按占位符切分为文本片段与参数槽；
+ * 发送时只需按玩家客户端语言查表并填入参数。消息可以在 messages.locales.<语言> 下按语言覆盖，
+ * 未覆盖的消息使用默认语言
+ */
+final class MessageCatalog {
+
+    /**
+     * 消息：配置路径(相对 messages)、默认文本、是否带前缀与参数槽名称，参数按槽的顺序传入
+     */
+    enum Key {
+        PLAYERS_ONLY("errors.players-only", "只有玩家可以使用此命令！"),
+        UNKNOWN_COMMAND("errors.invalid-command", "未知命令！输入 /partner help 查看帮助"),
+        NO_PERMISSION("errors.no-permission", "你没有权限执行此命令！"),
+        SPECTATOR("errors.spectator", "旁观模式下不能召唤伙伴！"),
+        IN_WATER("errors.in-water", "在水中不能召唤伙伴！"),
+        IN_VEHICLE("errors.in-vehicle", "在坐骑或载具上不能召唤伙伴！"),
+        NOTHING_TO_HIDE("errors.nothing-to-hide", "你还没有伙伴可以隐藏！"),
+        ALREADY_HIDDEN("errors.already-hidden", "你的伙伴已经隐藏了！"),
+        NO_PARTNER("errors.no-partner", "你还没有伙伴！"),
+        ALREADY_SHOWN("errors.already-shown", "你的伙伴已经显示出来了！"),
+
+        SUMMON("summon", "伙伴已出现！持续 {duration}秒", "duration"),
+        RESUMMON("resummon", "正在重新召唤伙伴..."),
+        HIDE("hide", "伙伴已隐藏！输入 /partner show 重新召唤"),
+        SHOW("show", "伙伴已重新出现！"),
+        DEATH("death", "你的伙伴死亡了！"),
+        COOLDOWN("cooldown", "你的伙伴正在冷却中，请 {seconds} 秒后再试！", "seconds"),
+        WORLD_CHANGE("world-change", "伙伴已传送到新世界！"),
+        RELOADED("reloaded", "配置已重载！"),
+
+        PARTICLE_USAGE("particle.usage", "用法: /partner particle <{types}>", "types"),
+        PARTICLE_UNKNOWN("particle.unknown", "未知粒子效果类型！可用类型: {types}", "types"),
+        PARTICLE_SWITCHED("particle.switched", "已切换至粒子效果: {type}", "type"),
+        EFFECTS_STATUS_ON("effects.status-on", "你当前已开启伙伴粒子，用法: /partner effects <on|off>"),
+        EFFECTS_STATUS_OFF("effects.status-off", "你当前已关闭伙伴粒子，用法: /partner effects <on|off>"),
+        EFFECTS_ON("effects.enabled", "已开启伙伴粒子效果"),
+        EFFECTS_OFF("effects.disabled", "已关闭伙伴粒子效果，你将不再看到任何伙伴粒子"),
+        EFFECTS_USAGE("effects.usage", "用法: /partner effects <on|off>"),
+
+        DENSITY_LIMIT("errors.crowded", "附近的伙伴太多了，请换个地方再召唤！"),
+        DENSITY_DEFERRED("crowded-deferred", "附近的伙伴太多，你的伙伴暂时没有出现，稍后输入 /partner show 召唤"),
+        UNKNOWN_WORLD("errors.unknown-world", "未找到世界: {world}", "world"),
+
+        NEAR_HEADER("near.header", "周围 {radius} 个区块内有 &e{count}&f 个伙伴", "radius", "count"),
+        NEAR_ENTRY(false, "near.entry", "&7  {owner} 的 {type}，区块 ({x}, {z})", "owner", "type", "x", "z"),
+        NEAR_MORE(false, "near.more", "&7  ……还有 {more} 个", "more"),
+        LIST_HEADER("list.header", "世界 {world} 共有 &e{count}&f 个伙伴，最密集的区块：", "world", "count"),
+        LIST_ENTRY(false, "list.entry", "&7  区块 ({x}, {z})：{count} 个", "x", "z", "count"),
+
+        STATS_EXPORTED("stats.exported", "统计已导出到 {file}", "file"),
+        STATS_TIMING("stats.timing", "插件耗时: 上一tick &e{last}ms&f，平均 &e{average}ms", "last", "average"),
+        STATS_PARTNERS("stats.partners", "活跃伙伴: &e{active}&f，跟随中: &e{following}", "active", "following"),
+        STATS_EFFECTS("stats.effects", "进行中的效果: &e{effects}&f，上一tick发送粒子: &e{particles}",
+                "effects", "particles"),
+        STATS_QUALITY("stats.quality", "粒子质量: &e{level}&f，服务端平滑 MSPT: &e{mspt}ms", "level", "mspt"),
+        STATS_PROBE(false, "stats.probe", "&7  {probe}: {count} 次，平均 {mean}µs，p99 ≤ {p99}µs",
+                "probe", "count", "mean", "p99");
+
+        final boolean prefixed;
+        final String path;
+        final String defaultText;
+        final String[] slots;
+
+        Key(String path, String defaultText, String... slots) {
+            this(true, path, defaultText, slots);
+        }
+
+        Key(boolean prefixed, String path, String defaultText, String... slots) {
+            this.prefixed = prefixed;
+            this.path = path;
+            this.defaultText = defaultText;
+            this.slots = slots;
+        }
+    }
+
+    static final String DEFAULT_PREFIX = "&b[伙伴]&f ";
+    private static final Key[] KEYS = Key.values();
+
+    /**
+     * 一种语言下全部已编译的消息与帮助信息
+     */
+    private static final class Table {
+        final Map<Key, Template> templates;
+        final List<String> helpLines;
+
+        Table(Map<Key, Template> templates, List<String> helpLines) {
+            this.templates = templates;
+            this.helpLines = helpLines;
+        }
+    }
+
+    /**
+     * 编译后的消息：literals[0] slot[0] literals[1] slot[1] ... literals[n]，没有参数时直接返回整条文本
+     */
+    static final class Template {
+        private final String[] literals;
+        private final int[] slots;
+        private final int length;
+
+        private Template(String[] literals, int[] slots) {
+            this.literals = literals;
+            this.slots = slots;
+            int total = 0;
+            for (String literal : literals) total += literal.length();
+            this.length = total;
+        }
+
+        static Template compile(String text, String[] slotNames) {
+            List<String> literals = new ArrayList<>();
+            List<Integer> slots = new ArrayList<>();
+            int from = 0;
+            int open = text.indexOf('{');
+            while (open >= 0) {
+                int close = text.indexOf('}', open + 1);
+                if (close < 0) break;
+                int slot = indexOf(slotNames, text.substring(open + 1, close));
+                if (slot >= 0) {
+                    literals.add(text.substring(from, open));
+                    slots.add(slot);
+                    from = close + 1;
+                }
+                open = text.indexOf('{', slot >= 0 ? from : open + 1);
+            }
+            literals.add(text.substring(from));
+
+            int[] slotArray = new int[slots.size()];
+            for (int i = 0; i < slotArray.length; i++) slotArray[i] = slots.get(i);
+            return new Template(literals.toArray(new String[0]), slotArray);
+        }
+
+        String format(Object... args) {
+            if (slots.length == 0) return literals[0];
+            StringBuilder message = new StringBuilder(length + 16 * slots.length);
+            for (int i = 0; i < slots.length; i++) {
+                message.append(literals[i]);
+                int slot = slots[i];
+                message.append(slot < args.length ? args[slot] : "");
+            }
+            return message.append(literals[slots.length]).toString();
+        }
+
+        private static int indexOf(String[] names, String name) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) return i;
+            }
+            return -1;
+        }
+    }
+
+    private final Table defaults;
+    private final Map<String, Table> locales;
+    // 客户端语言 -> 选中的语言表，首次遇到某个语言时解析回退并缓存
+    private final Map<String, Table> resolved = new ConcurrentHashMap<>();
+
+    private MessageCatalog(Table defaults, Map<String, Table> locales) {
+        this.defaults = defaults;
+        this.locales = locales;
+    }
+
+    /**
+     * 编译消息目录；helpPlaceholders 用于替换帮助信息中在加载时即可确定的占位符
+     * 可在任意线程调用，不访问服务端状态
+     */
+    static MessageCatalog compile(ConfigurationSection messages, ConfigurationSection help,
+                                  UnaryOperator<String> helpPlaceholders) {
+        String prefix = messages == null ? DEFAULT_PREFIX : messages.getString("prefix", DEFAULT_PREFIX);
+        Map<Key, Template> defaultTemplates = compileTemplates(messages, null, prefix);
+        List<String> defaultHelp = compileHelp(help.getStringList("help-messages"), helpPlaceholders);
+        Table defaults = new Table(defaultTemplates, defaultHelp);
+
+        // 语言表只覆盖设置了的消息，其余沿用默认语言
+        Map<String, Table> locales = new HashMap<>();
+        ConfigurationSection messageLocales = messages == null ? null : messages.getConfigurationSection("locales");
+        ConfigurationSection helpLocales = help.getConfigurationSection("locales");
+        List<String> names = new ArrayList<>();
+        if (messageLocales != null) names.addAll(messageLocales.getKeys(false));
+        if (helpLocales != null) names.addAll(helpLocales.getKeys(false));
+        for (String name : names) {
+            String locale = normalize(name);
+            if (locales.containsKey(locale)) continue;
+            ConfigurationSection localized = messageLocales == null ? null : messageLocales.getConfigurationSection(name);
+            String localePrefix = localized == null ? prefix : localized.getString("prefix", prefix);
+            Map<Key, Template> templates = localized == null && localePrefix.equals(prefix)
+                    ? defaultTemplates : compileTemplates(localized, messages, localePrefix);
+            List<String> helpLines = helpLocales != null && helpLocales.isList(name)
+                    ? compileHelp(helpLocales.getStringList(name), helpPlaceholders) : defaultHelp;
+            locales.put(locale, new Table(templates, helpLines));
+        }
+        return new MessageCatalog(defaults, locales);
+    }
+
+    private static Map<Key, Template> compileTemplates(ConfigurationSection section, ConfigurationSection fallback,
+                                                       String prefix) {
+        String coloredPrefix = color(prefix);
+        Map<Key, Template> templates = new EnumMap<>(Key.class);
+        for (Key key : KEYS) {
+            String text = key.defaultText;
+            if (section != null && section.isString(key.path)) {
+                text = section.getString(key.path);
+            } else if (fallback != null && fallback.isString(key.path)) {
+                text = fallback.getString(key.path);
+            }
+            text = color(text);
+            templates.put(key, Template.compile(key.prefixed ? coloredPrefix + text : text, key.slots));
+        }
+        return Collections.unmodifiableMap(templates);
+    }
+
+    private static List<String> compileHelp(List<String> lines, UnaryOperator<String> placeholders) {
+        List<String> compiled = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            compiled.add(color(placeholders.apply(line)));
+        }
+        return Collections.unmodifiableList(compiled);
+    }
+
+    // ================== 发送 ================== //
+
+    /**
+     * 按接收者的客户端语言发送消息，args 按消息声明的参数槽顺序传入
+     */
+    void send(CommandSender sender, Key key, Object... args) {
+        sender.sendMessage(table(sender).templates.get(key).format(args));
+    }
+
+    /**
+     * 按接收者的客户端语言发送帮助信息
+     */
+    void sendHelp(CommandSender sender) {
+        for (String line : table(sender).helpLines) {
+            sender.sendMessage(line);
+        }
+    }
+
+    private Table table(CommandSender sender) {
+        if (locales.isEmpty() || !(sender instanceof Player)) return defaults;
+        String locale = ((Player) sender).getLocale();
+        if (locale == null || locale.isEmpty()) return defaults;
+        return resolved.computeIfAbsent(locale, this::resolve);
+    }
+
+    /**
+     * 先精确匹配(如 en_us)，再匹配语言(如 en)，都没有时使用默认语言
+     */
+    private Table resolve(String clientLocale) {
+        String locale = normalize(clientLocale);
+        Table table = locales.get(locale);
+        if (table != null) return table;
+        int separator = locale.indexOf('_');
+        if (separator > 0) {
+            table = locales.get(locale.substring(0, separator));
+            if (table != null) return table;
+        }
+        return defaults;
+    }
+
+    private static String normalize(String locale) {
+        return locale.trim().replace('-', '_').toLowerCase(Locale.ROOT);
+    }
+
+    private static String color(String text) {
+        return ChatColor.translateAlternateColorCodes('&', text);
+    }
+}
@@ -0,0 +1,87 @@
+package com.y4vyq.partnerplugin;
+
+/**
+ * 线性探测开放寻址哈希表的公共部分
+ * 子类用并行的基本类型数组保存键与值，这里只负责容量、哈希扩散与删除时的后移填补，
+ * 各表的探测与删除逻辑因此只有一份。非线程安全
+ */
+abstract class OpenHashTable {
+
+    static final int MIN_CAPACITY = 16;
+
+    int mask;
+    int size;
+
+    final int size() {
+        return size;
+    }
+
+    final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 容纳 expected 个元素而不超过 3/4 负载所需的容量
+     */
+    static int capacityFor(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expected) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * 64 位哈希值扩散后落入的首选槽位
+     */
+    final int slot(long hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * 再插入一个元素后是否超过 3/4 负载
+     */
+    final boolean full() {
+        return size + 1 > (mask + 1) * 3 / 4;
+    }
+
+    /**
+     * 槽位是否有元素
+     */
+    abstract boolean occupied(int slot);
+
+    /**
+     * 槽位中元素的首选槽位
+     */
+    abstract int home(int slot);
+
+    /**
+     * 把 from 槽位的元素移到 to 槽位
+     */
+    abstract void move(int from, int to);
+
+    /**
+     * 清空槽位
+     */
+    abstract void vacate(int slot);
+
+    /**
+     * 删除 slot 中的元素：把后续同簇元素前移填补空位，保证查找不被打断
+     */
+    final void removeAt(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (occupied(next)) {
+            int ideal = home(next);
+            // ideal 不在 (gap, next] 区间内时可以前移到 gap
+            if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                move(next, gap);
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        vacate(gap);
+        size--;
+    }
+}
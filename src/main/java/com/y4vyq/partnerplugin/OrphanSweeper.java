@@ -0,0 +1,81 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.entity.LivingEntity;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * 孤儿伙伴清理
+ * 区块加载时带伙伴标签的实体只进入待检查队列，每 tick 最多检查 budget 个，由 handler 决定重新认领或移除，
+ * 大量区块同时加载也不会在单个 tick 内集中处理。区域多线程服务端上检查会转到实体所在线程执行
+ */
+final class OrphanSweeper implements Runnable {
+
+    private final TaskScheduler scheduler;
+    private final PartnerMetrics metrics;
+    private final Consumer<LivingEntity> handler;
+    private final Queue<LivingEntity> pending = new ConcurrentLinkedQueue<>();
+    private volatile int budget = PartnerConfig.DEFAULT_ORPHAN_SWEEP_BUDGET;
+    private TaskScheduler.Task task;
+
+    OrphanSweeper(TaskScheduler scheduler, PartnerMetrics metrics, Consumer<LivingEntity> handler) {
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.handler = handler;
+    }
+
+    void start() {
+        if (task == null) {
+            task = scheduler.runRepeating(this, 1, 1);
+        }
+    }
+
+    void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        pending.clear();
+    }
+
+    void setBudget(int budget) {
+        this.budget = Math.max(1, budget);
+    }
+
+    /**
+     * 加入待检查队列，可在任意线程调用
+     */
+    void enqueue(LivingEntity entity) {
+        pending.add(entity);
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void run() {
+        if (pending.isEmpty()) return;
+        long start = metrics.start();
+        boolean regionized = scheduler.isRegionized();
+        LivingEntity entity;
+        for (int i = 0; i < budget && (entity = pending.poll()) != null; i++) {
+            if (regionized) {
+                LivingEntity candidate = entity;
+                scheduler.runFor(candidate, () -> check(candidate));
+            } else {
+                check(entity);
+            }
+        }
+        metrics.stop(PartnerMetrics.Probe.ORPHAN_SWEEP, start);
+    }
+
+    private void check(LivingEntity entity) {
+        // 入队后已被移除或再次卸载的实体无需处理
+        if (entity.isValid()) {
+            handler.accept(entity);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.Particle;
+
+/**
+ * 可复用的粒子帧缓冲区
+ * {@link PartnerPlugin.FrameGenerator} 每帧把点（相对效果原点的 xyz 偏移、粒子数据、随机散布与速度）写入这里，
+ * 插件随后统一批量发送。缓冲区由插件持有并在帧之间复用，容量扩展后不再分配内存
+ */
+public final class ParticleBuffer {
+
+    private static final int INITIAL_CAPACITY = 256;
+    // 与 World#spawnParticle 未指定 extra 时相同
+    private static final double DEFAULT_SPEED = 1.0;
+
+    private double[] coords = new double[INITIAL_CAPACITY * 3];
+    private Particle[] particles = new Particle[INITIAL_CAPACITY];
+    private Object[] data = new Object[INITIAL_CAPACITY];
+    // 每个点的散布范围 xyz 与速度(spawnParticle 的 offset 与 extra)
+    private double[] spreads = new double[INITIAL_CAPACITY * 3];
+    private double[] speeds = new double[INITIAL_CAPACITY];
+    private int size;
+
+    // 当前画笔：之后 add 的点使用的粒子、数据、散布与速度
+    private Particle particle = Particle.FLAME;
+    private Object particleData;
+    private double spreadX;
+    private double spreadY;
+    private double spreadZ;
+    private double speed = DEFAULT_SPEED;
+
+    ParticleBuffer() {
+    }
+
+    /**
+     * 设置之后写入的点使用的粒子类型
+     */
+    public void particle(Particle particle) {
+        particle(particle, null);
+    }
+
+    /**
+     * 设置之后写入的点使用的粒子类型与数据（如 DustOptions）
+     */
+    public void particle(Particle particle, Object data) {
+        this.particle = particle;
+        this.particleData = data;
+    }
+
+    /**
+     * 设置之后写入的点的随机散布范围(格)，客户端在各轴上按该范围随机偏移每个粒子
+     */
+    public void spread(double x, double y, double z) {
+        this.spreadX = x;
+        this.spreadY = y;
+        this.spreadZ = z;
+    }
+
+    /**
+     * 设置之后写入的点的粒子速度(spawnParticle 的 extra)，默认为 1.0
+     */
+    public void speed(double speed) {
+        this.speed = speed;
+    }
+
+    /**
+     * 写入一个相对效果原点的点
+     */
+    public void add(double x, double y, double z) {
+        if (size == particles.length) {
+            grow();
+        }
+        int offset = size * 3;
+        coords[offset] = x;
+        coords[offset + 1] = y;
+        coords[offset + 2] = z;
+        spreads[offset] = spreadX;
+        spreads[offset + 1] = spreadY;
+        spreads[offset + 2] = spreadZ;
+        particles[size] = particle;
+        data[size] = particleData;
+        speeds[size] = speed;
+        size++;
+    }
+
+    /**
+     * 当前帧已写入的点数
+     */
+    public int size() {
+        return size;
+    }
+
+    double x(int index) {
+        return coords[index * 3];
+    }
+
+    double y(int index) {
+        return coords[index * 3 + 1];
+    }
+
+    double z(int index) {
+        return coords[index * 3 + 2];
+    }
+
+    Particle particleAt(int index) {
+        return particles[index];
+    }
+
+    Object dataAt(int index) {
+        return data[index];
+    }
+
+    double spreadX(int index) {
+        return spreads[index * 3];
+    }
+
+    double spreadY(int index) {
+        return spreads[index * 3 + 1];
+    }
+
+    double spreadZ(int index) {
+        return spreads[index * 3 + 2];
+    }
+
+    double speedAt(int index) {
+        return speeds[index];
+    }
+
+    /**
+     * 开始新的一帧，画笔恢复为默认的 FLAME、无散布、速度 1.0
+     */
+    void reset() {
+        size = 0;
+        particle = Particle.FLAME;
+        particleData = null;
+        spreadX = 0;
+        spreadY = 0;
+        spreadZ = 0;
+        speed = DEFAULT_SPEED;
+    }
+
+    private void grow() {
+        int capacity = particles.length * 2;
+        double[] newCoords = new double[capacity * 3];
+        System.arraycopy(coords, 0, newCoords, 0, size * 3);
+        Particle[] newParticles = new Particle[capacity];
+        System.arraycopy(particles, 0, newParticles, 0, size);
+        Object[] newData = new Object[capacity];
+        System.arraycopy(data, 0, newData, 0, size);
+        double[] newSpreads = new double[capacity * 3];
+        System.arraycopy(spreads, 0, newSpreads, 0, size * 3);
+        double[] newSpeeds = new double[capacity];
+        System.arraycopy(speeds, 0, newSpeeds, 0, size);
+        coords = newCoords;
+        particles = newParticles;
+        data = newData;
+        spreads = newSpreads;
+        speeds = newSpeeds;
+    }
+}
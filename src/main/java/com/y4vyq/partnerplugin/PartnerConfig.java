@@ -0,0 +1,309 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Particle;
+import org.bukkit.Sound;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.EntityType;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * 编译后的不可变配置快照
+ * 在 reloadConfigs() 时（异步线程上）一次性读取并校验 config.yml、help.yml 与 effects.yml，
+ * 实体类型、音效、粒子等枚举预先解析好，粒子效果预先计算为逐帧的点；热路径只读取字段，重载时整体替换引用。
+ * 配置项优先读取 config.yml 中的路径，未设置时兼容旧版路径
+ */
+final class PartnerConfig {
+
+    static final String DEFAULT_ENTITY_TYPE = "FOX";
+    static final int DEFAULT_DURATION = 300;
+    static final String DEFAULT_SOUND = "ENTITY_FOX_AMBIENT";
+    static final int DEFAULT_MAX_PARTICLES_PER_TICK = 20;
+    static final int DEFAULT_AUTO_SAVE_INTERVAL = 5;
+    static final int DEFAULT_TELEPORT_COOLDOWN = 3;
+    static final int DEFAULT_SUMMON_COOLDOWN = 5;
+    static final int DEFAULT_ORPHAN_SWEEP_BUDGET = 20;
+    static final String DEFAULT_BYPASS_COOLDOWN_PERMISSION = "partner.bypass.cooldown";
+
+    // 伙伴实体
+    final EntityType entityType;
+    final int duration;
+    final String customName;
+    final boolean showName;
+
+    // 实体属性，未配置的项为 null
+    final Double health;
+    final Boolean ai;
+    final Boolean glowing;
+    final Boolean silent;
+    final Boolean adult;
+
+    // 跟随行为
+    final boolean followOwner;
+    final boolean teleportWithOwner;
+    final boolean avoidWater;
+    final double followDistance;
+    final double teleportDistance;
+    final double followSpeed;
+    final int followCheckInterval;
+
+    // 召唤音效，无效时为 null
+    final Sound summonSound;
+    final float summonVolume;
+    final float summonPitch;
+
+    // 消失效果：引用 effects.yml 中的效果，未引用时由旧版的粒子与数量编译
+    final KeyframeEffect despawnEffect;
+    final Sound despawnSound;
+    final float despawnVolume;
+    final float despawnPitch;
+
+    // 粒子效果
+    final String generatorType;
+    final boolean customEffectEnabled;
+    final Particle customParticle;
+    final int customCount;
+    final double customRadius;
+    final int customDuration;
+    final double customHeightMultiplier;
+    final int customPointsPerTick;
+    final int maxParticlesPerTick;
+    final boolean cullFarChunks;
+
+    // 预编译的关键帧效果(效果名 -> 效果)，包括 effects.yml 与 config.yml 中的 effects.summon
+    final Map<String, KeyframeEffect> effects;
+
+    // 自适应粒子质量：降级/恢复的 MSPT 阈值与每次调整后的保持时间(tick)
+    final boolean adaptiveQuality;
+    final double qualityDegradeMspt;
+    final double qualityRestoreMspt;
+    final int qualityHoldTicks;
+
+    // 其他设置
+    final int autoSaveInterval;
+    final boolean softHide;
+    // 每 tick 最多检查的孤儿伙伴实体数
+    final int orphanSweepBudget;
+
+    // 伙伴密度上限：单个区块、以及以生成区块为中心 2 * densityRadius + 1 见方区块内的伙伴数(<= 0 不限制)
+    final int maxPartnersPerChunk;
+    final int maxPartnersPerArea;
+    final int densityRadius;
+
+    // 冷却(tick)与绕过冷却的权限
+    final int teleportCooldownTicks;
+    final int summonCooldownTicks;
+    final String bypassCooldownPermission;
+
+    // 统计导出：Prometheus 文本文件(相对插件目录)与导出间隔(秒，<= 0 不定期导出)
+    final String metricsExportFile;
+    final int metricsExportInterval;
+
+    // 已编译的消息与帮助信息
+    final MessageCatalog messages;
+
+    private PartnerConfig(ConfigurationSection config, ConfigurationSection help, ConfigurationSection effectFile,
+                          Logger logger) {
+        entityType = parseEntityType(string(config, DEFAULT_ENTITY_TYPE, "partner.entity-type"), logger);
+        duration = integer(config, DEFAULT_DURATION, "settings.default-duration", "partner.duration");
+        customName = color(string(config, "&6&l我的伙伴", "partner.display-name", "partner.name"));
+        showName = bool(config, true, "partner.nameplate.visible", "partner.show-name");
+
+        ConfigurationSection attributes = section(config, "partner.attributes", "entity-attributes");
+        health = attributes != null && (attributes.isDouble("health") || attributes.isInt("health"))
+                ? attributes.getDouble("health") : null;
+        ai = optionalBool(attributes, "ai");
+        glowing = optionalBool(attributes, "glowing");
+        silent = optionalBool(attributes, "silent");
+        adult = parseAge(attributes);
+
+        followOwner = bool(config, true, "partner.behaviors.follow-owner");
+        teleportWithOwner = bool(config, true, "partner.behaviors.teleport-with-owner");
+        avoidWater = bool(config, true, "partner.behaviors.avoid-water");
+        followDistance = Math.max(1.0, decimal(config, 6.0, "partner.behaviors.follow-distance"));
+        teleportDistance = Math.max(followDistance, decimal(config, 24.0, "partner.behaviors.teleport-distance"));
+        followSpeed = decimal(config, 1.2, "partner.behaviors.follow-speed");
+        followCheckInterval = Math.max(1, integer(config, 10, "advanced.follow-check-interval"));
+
+        summonSound = parseSound(string(config, DEFAULT_SOUND, "effects.summon.sound.type", "summon-effect.sound"), logger);
+        summonVolume = (float) decimal(config, 1.0, "effects.summon.sound.volume", "summon-effect.volume");
+        summonPitch = (float) decimal(config, 1.0, "effects.summon.sound.pitch", "summon-effect.pitch");
+
+        Map<String, KeyframeEffect> compiled = new LinkedHashMap<>(
+                KeyframeEffect.compileAll(effectFile.getConfigurationSection("effects"), logger));
+        // config.yml 中的召唤效果以 summon 为名注册，effects.yml 中的同名定义优先；custom 形状沿用 particle-effect
+        String summonShape = string(config, "custom", "effects.summon.shape");
+        if (!compiled.containsKey("summon") && !"custom".equalsIgnoreCase(summonShape)) {
+            KeyframeEffect summon = KeyframeEffect.compile("summon",
+                    config.getConfigurationSection("effects.summon"), logger);
+            if (summon != null) compiled.put("summon", summon);
+        }
+        effects = Collections.unmodifiableMap(compiled);
+
+        String despawnName = string(config, "", "effects.despawn.effect").toLowerCase(Locale.ROOT);
+        KeyframeEffect despawn = effects.get(despawnName);
+        if (despawn == null) {
+            if (!despawnName.isEmpty()) {
+                logger.warning("未找到消失效果: " + despawnName + "，使用 effects.despawn 中的粒子");
+            }
+            // 与旧版相同：在伙伴脚下一次性散布粒子
+            Particle particle = parseParticle(string(config, "CLOUD", "effects.despawn.particle"), Particle.CLOUD, logger);
+            double spread = decimal(config, 0.5, "effects.despawn.spread");
+            double speed = decimal(config, 0.1, "effects.despawn.speed");
+            despawn = KeyframeEffect.simple("despawn", KeyframeEffect.Shape.POINT, particle,
+                    integer(config, 30, "effects.despawn.count"), 0, 0, 1, spread, speed, logger);
+            if (despawn == null) {
+                despawn = KeyframeEffect.simple("despawn", KeyframeEffect.Shape.POINT, Particle.CLOUD, 30, 0, 0, 1,
+                        0.5, 0.1, logger);
+            }
+        }
+        despawnEffect = despawn;
+        Sound despawnSoundType = parseSound(string(config, "ENTITY_FOX_SLEEP", "effects.despawn.sound.type"), logger);
+        despawnSound = despawnSoundType != null ? despawnSoundType : parseSound("ENTITY_CAT_PURR", null);
+        despawnVolume = (float) decimal(config, 0.8, "effects.despawn.sound.volume");
+        despawnPitch = (float) decimal(config, 1.2, "effects.despawn.sound.pitch");
+
+        generatorType = string(config, "default", "particle-effect.generator-type").toLowerCase(Locale.ROOT);
+        ConfigurationSection effect = config.getConfigurationSection("particle-effect");
+        customEffectEnabled = effect != null;
+        customParticle = parseParticle(effect == null ? "FLAME" : effect.getString("particle", "FLAME"),
+                Particle.FLAME, logger);
+        customCount = effect == null ? 100 : effect.getInt("count", 100);
+        customRadius = effect == null ? 1.5 : effect.getDouble("radius", 1.5);
+        customDuration = effect == null ? 20 : effect.getInt("duration", 20);
+        customHeightMultiplier = effect == null ? 0.5 : effect.getDouble("height-multiplier", 0.5);
+        customPointsPerTick = effect == null ? 10 : effect.getInt("points-per-tick", 10);
+        maxParticlesPerTick = integer(config, DEFAULT_MAX_PARTICLES_PER_TICK,
+                "advanced.particle-optimization.max-particles-per-tick");
+        cullFarChunks = bool(config, true, "advanced.particle-optimization.disable-in-far-chunks");
+        adaptiveQuality = bool(config, true, "advanced.particle-optimization.adaptive-quality.enabled");
+        qualityDegradeMspt = decimal(config, 40.0, "advanced.particle-optimization.adaptive-quality.degrade-mspt");
+        qualityRestoreMspt = Math.min(qualityDegradeMspt,
+                decimal(config, 30.0, "advanced.particle-optimization.adaptive-quality.restore-mspt"));
+        qualityHoldTicks = Math.max(1, integer(config, 100, "advanced.particle-optimization.adaptive-quality.hold-ticks"));
+
+        autoSaveInterval = Math.max(1, integer(config, DEFAULT_AUTO_SAVE_INTERVAL, "settings.auto-save-interval"));
+        softHide = bool(config, true, "settings.soft-hide");
+        orphanSweepBudget = Math.max(1, integer(config, DEFAULT_ORPHAN_SWEEP_BUDGET, "advanced.orphan-sweep-per-tick"));
+        maxPartnersPerChunk = integer(config, 6, "advanced.density.max-per-chunk");
+        maxPartnersPerArea = integer(config, 24, "advanced.density.max-per-area");
+        densityRadius = Math.max(0, Math.min(8, integer(config, 2, "advanced.density.area-radius")));
+
+        teleportCooldownTicks = 20 * Math.max(0, integer(config, DEFAULT_TELEPORT_COOLDOWN, "settings.teleport-cooldown"));
+        summonCooldownTicks = 20 * Math.max(0, integer(config, DEFAULT_SUMMON_COOLDOWN, "settings.summon-cooldown"));
+        bypassCooldownPermission = string(config, DEFAULT_BYPASS_COOLDOWN_PERMISSION,
+                "permissions.special.bypass-cooldown");
+
+        metricsExportFile = string(config, "metrics.prom", "advanced.metrics.export-file");
+        metricsExportInterval = integer(config, 0, "advanced.metrics.export-interval");
+
+        String durationText = String.valueOf(duration);
+        String entityTypeText = entityType.name();
+        messages = MessageCatalog.compile(config.getConfigurationSection("messages"), help,
+                line -> line.replace("{duration}", durationText).replace("{entity-type}", entityTypeText));
+    }
+
+    /**
+     * 读取并编译配置文件；会进行磁盘读取，应在异步线程调用
+     */
+    static PartnerConfig load(File configFile, File helpFile, File effectsFile, Logger logger) {
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(configFile);
+        YamlConfiguration help = YamlConfiguration.loadConfiguration(helpFile);
+        YamlConfiguration effectFile = YamlConfiguration.loadConfiguration(effectsFile);
+        return new PartnerConfig(config, help, effectFile, logger);
+    }
+
+    // ================== 解析工具 ================== //
+
+    private static String color(String text) {
+        return ChatColor.translateAlternateColorCodes('&', text);
+    }
+
+    private static EntityType parseEntityType(String typeName, Logger logger) {
+        try {
+            EntityType type = EntityType.valueOf(typeName.toUpperCase(Locale.ROOT));
+            if (type.isAlive()) return type;
+        } catch (IllegalArgumentException ignored) {}
+
+        logger.warning("无效的实体类型: " + typeName + "，使用默认值 " + DEFAULT_ENTITY_TYPE);
+        return EntityType.valueOf(DEFAULT_ENTITY_TYPE);
+    }
+
+    private static Sound parseSound(String soundName, Logger logger) {
+        try {
+            return Sound.valueOf(soundName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            if (logger != null) {
+                logger.warning("无效的音效: " + soundName);
+            }
+            return null;
+        }
+    }
+
+    private static Particle parseParticle(String particleName, Particle fallback, Logger logger) {
+        try {
+            return Particle.valueOf(particleName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warning("无效的粒子类型: " + particleName + "，使用默认值 " + fallback);
+            return fallback;
+        }
+    }
+
+    /**
+     * 年龄既支持 adult/baby，也兼容旧版的 true(成年)/false(幼年)
+     */
+    private static Boolean parseAge(ConfigurationSection attributes) {
+        if (attributes == null || !attributes.isSet("age")) return null;
+        if (attributes.isBoolean("age")) return attributes.getBoolean("age");
+        String age = attributes.getString("age", "");
+        if ("adult".equalsIgnoreCase(age)) return true;
+        if ("baby".equalsIgnoreCase(age)) return false;
+        return null;
+    }
+
+    private static Boolean optionalBool(ConfigurationSection section, String path) {
+        return section != null && section.isBoolean(path) ? section.getBoolean(path) : null;
+    }
+
+    private static ConfigurationSection section(ConfigurationSection config, String... paths) {
+        for (String path : paths) {
+            ConfigurationSection section = config.getConfigurationSection(path);
+            if (section != null) return section;
+        }
+        return null;
+    }
+
+    private static String firstSet(ConfigurationSection config, String... paths) {
+        for (String path : paths) {
+            if (config.isSet(path)) return path;
+        }
+        return null;
+    }
+
+    private static String string(ConfigurationSection config, String def, String... paths) {
+        String path = firstSet(config, paths);
+        return path == null ? def : config.getString(path, def);
+    }
+
+    private static int integer(ConfigurationSection config, int def, String... paths) {
+        String path = firstSet(config, paths);
+        return path == null ? def : config.getInt(path, def);
+    }
+
+    private static double decimal(ConfigurationSection config, double def, String... paths) {
+        String path = firstSet(config, paths);
+        return path == null ? def : config.getDouble(path, def);
+    }
+
+    private static boolean bool(ConfigurationSection config, boolean def, String... paths) {
+        String path = firstSet(config, paths);
+        return path == null ? def : config.getBoolean(path, def);
+    }
+}
@@ -0,0 +1,206 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 伙伴的区块空间索引
+ * 每个世界一张以区块坐标为键的 {@link LongObjectMap}，区块内记录其中伙伴的主人；另记录每个主人伙伴所在的区块，
+ * 伙伴移动时只在跨越区块边界时更新两处。召唤前的密度判断与 /partner near、/partner list 只访问相关区块，
+ * 不遍历全部伙伴。索引读写在同一把锁下进行
+ */
+final class PartnerGrid {
+
+    /**
+     * 伙伴所在的世界与区块
+     */
+    private static final class Position {
+        final UUID world;
+        final long chunk;
+
+        Position(UUID world, long chunk) {
+            this.world = world;
+            this.chunk = chunk;
+        }
+    }
+
+    /**
+     * 伙伴主人及其伙伴所在区块的查询结果
+     */
+    static final class Located {
+        final UUID owner;
+        final int x;
+        final int z;
+
+        Located(UUID owner, int x, int z) {
+            this.owner = owner;
+            this.x = x;
+            this.z = z;
+        }
+    }
+
+    /**
+     * 区块中伙伴数量的查询结果
+     */
+    static final class ChunkCount {
+        final int x;
+        final int z;
+        final int count;
+
+        ChunkCount(int x, int z, int count) {
+            this.x = x;
+            this.z = z;
+            this.count = count;
+        }
+    }
+
+    private final Map<UUID, LongObjectMap<List<UUID>>> worlds = new HashMap<>();
+    private final Map<UUID, Position> positions = new HashMap<>();
+
+    static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    static int chunkX(long key) {
+        return (int) (key >> 32);
+    }
+
+    static int chunkZ(long key) {
+        return (int) key;
+    }
+
+    /**
+     * 登记或更新 owner 的伙伴位置，仍在同一区块时不做修改
+     */
+    void update(UUID owner, Location location) {
+        World world = location.getWorld();
+        if (world == null) return;
+        UUID worldId = world.getUID();
+        long chunk = chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+        synchronized (worlds) {
+            Position previous = positions.get(owner);
+            if (previous != null) {
+                if (previous.chunk == chunk && previous.world.equals(worldId)) return;
+                unlink(owner, previous);
+            }
+            positions.put(owner, new Position(worldId, chunk));
+            LongObjectMap<List<UUID>> chunks = worlds.computeIfAbsent(worldId, id -> new LongObjectMap<>());
+            List<UUID> cell = chunks.get(chunk);
+            if (cell == null) {
+                cell = new ArrayList<>(2);
+                chunks.put(chunk, cell);
+            }
+            cell.add(owner);
+        }
+    }
+
+    void remove(UUID owner) {
+        synchronized (worlds) {
+            Position previous = positions.remove(owner);
+            if (previous != null) {
+                unlink(owner, previous);
+            }
+        }
+    }
+
+    void clear() {
+        synchronized (worlds) {
+            worlds.clear();
+            positions.clear();
+        }
+    }
+
+    private void unlink(UUID owner, Position position) {
+        LongObjectMap<List<UUID>> chunks = worlds.get(position.world);
+        if (chunks == null) return;
+        List<UUID> cell = chunks.get(position.chunk);
+        if (cell == null) return;
+        cell.remove(owner);
+        if (cell.isEmpty()) {
+            chunks.remove(position.chunk);
+            if (chunks.isEmpty()) {
+                worlds.remove(position.world);
+            }
+        }
+    }
+
+    /**
+     * 以 (chunkX, chunkZ) 为中心、边长 2 * radius + 1 个区块的范围内的伙伴数
+     */
+    int count(World world, int chunkX, int chunkZ, int radius) {
+        synchronized (worlds) {
+            LongObjectMap<List<UUID>> chunks = worlds.get(world.getUID());
+            if (chunks == null) return 0;
+            int total = 0;
+            for (int x = chunkX - radius; x <= chunkX + radius; x++) {
+                for (int z = chunkZ - radius; z <= chunkZ + radius; z++) {
+                    List<UUID> cell = chunks.get(chunkKey(x, z));
+                    if (cell != null) total += cell.size();
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * 以 (chunkX, chunkZ) 为中心、radius 个区块范围内的伙伴，按区块由近到远排列
+     */
+    List<Located> near(World world, int chunkX, int chunkZ, int radius) {
+        List<Located> found = new ArrayList<>();
+        synchronized (worlds) {
+            LongObjectMap<List<UUID>> chunks = worlds.get(world.getUID());
+            if (chunks == null) return found;
+            for (int x = chunkX - radius; x <= chunkX + radius; x++) {
+                for (int z = chunkZ - radius; z <= chunkZ + radius; z++) {
+                    List<UUID> cell = chunks.get(chunkKey(x, z));
+                    if (cell == null) continue;
+                    for (UUID owner : cell) {
+                        found.add(new Located(owner, x, z));
+                    }
+                }
+            }
+        }
+        found.sort((a, b) -> Integer.compare(distanceSq(a, chunkX, chunkZ), distanceSq(b, chunkX, chunkZ)));
+        return found;
+    }
+
+    private static int distanceSq(Located located, int chunkX, int chunkZ) {
+        int dx = located.x - chunkX;
+        int dz = located.z - chunkZ;
+        return dx * dx + dz * dz;
+    }
+
+    /**
+     * 世界中有伙伴的区块及其伙伴数，按数量从多到少排列，最多 limit 个
+     */
+    List<ChunkCount> densest(World world, int limit) {
+        List<ChunkCount> counts = new ArrayList<>();
+        synchronized (worlds) {
+            LongObjectMap<List<UUID>> chunks = worlds.get(world.getUID());
+            if (chunks == null) return counts;
+            chunks.forEach((key, cell) -> counts.add(new ChunkCount(chunkX(key), chunkZ(key), cell.size())));
+        }
+        counts.sort((a, b) -> Integer.compare(b.count, a.count));
+        return counts.size() > limit ? new ArrayList<>(counts.subList(0, limit)) : counts;
+    }
+
+    /**
+     * 世界中的伙伴总数
+     */
+    int size(World world) {
+        int[] total = new int[1];
+        synchronized (worlds) {
+            LongObjectMap<List<UUID>> chunks = worlds.get(world.getUID());
+            if (chunks != null) {
+                chunks.forEach((key, cell) -> total[0] += cell.size());
+            }
+        }
+        return total[0];
+    }
+}
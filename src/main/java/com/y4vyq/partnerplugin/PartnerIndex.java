@@ -0,0 +1,92 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Entity;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 伙伴身份索引
+ * 运行时以实体 ID 为键记录伙伴的主人，事件中判断“不是伙伴”只需一次哈希查找；
+ * 同时把主人 UUID 写入实体的 PersistentDataContainer，实体意外留存到区块中时可据此认领或清理。
+ * 索引为 ConcurrentHashMap：读取不加锁，写入只锁定所在的桶且为 O(1)，
+ * 区域多线程服务端上各区域的事件查找与伙伴增减互不阻塞
+ */
+final class PartnerIndex {
+
+    private final NamespacedKey ownerKey;
+    private final Map<Integer, UUID> owners = new ConcurrentHashMap<>();
+
+    PartnerIndex(Plugin plugin) {
+        this.ownerKey = new NamespacedKey(plugin, "owner");
+    }
+
+    /**
+     * 将实体标记为 owner 的伙伴
+     */
+    void tag(Entity entity, UUID owner) {
+        entity.getPersistentDataContainer().set(ownerKey, PersistentDataType.STRING, owner.toString());
+        owners.put(entity.getEntityId(), owner);
+    }
+
+    /**
+     * 从索引中移除实体
+     */
+    void untag(Entity entity) {
+        owners.remove(entity.getEntityId());
+    }
+
+    /**
+     * 获取伙伴的主人，不是伙伴时返回 null
+     */
+    UUID getOwner(Entity entity) {
+        return owners.get(entity.getEntityId());
+    }
+
+    boolean isPartner(Entity entity) {
+        return owners.containsKey(entity.getEntityId());
+    }
+
+    /**
+     * 实体是否带有伙伴标签（不解析标签内容）
+     */
+    boolean isTagged(Entity entity) {
+        return entity.getPersistentDataContainer().has(ownerKey, PersistentDataType.STRING);
+    }
+
+    /**
+     * 读取实体持久化标签中的主人，没有标签时返回 null；标签无效时一并清除
+     */
+    UUID taggedOwner(Entity entity) {
+        PersistentDataContainer container = entity.getPersistentDataContainer();
+        String value = container.get(ownerKey, PersistentDataType.STRING);
+        if (value == null) return null;
+
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            container.remove(ownerKey);
+            return null;
+        }
+    }
+
+    /**
+     * 重新登记已带标签的实体（如区块加载后认领）
+     */
+    void adopt(Entity entity, UUID owner) {
+        owners.put(entity.getEntityId(), owner);
+    }
+
+    int size() {
+        return owners.size();
+    }
+
+    void clear() {
+        owners.clear();
+    }
+}
@@ -0,0 +1,73 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.entity.EntityType;
+
+import java.util.UUID;
+
+/**
+ * 伙伴的不可变快照
+ * 由 {@link PartnerPlugin.PartnerService} 发布，不持有实体引用，可以在任意线程读取和保存
+ */
+public final class PartnerInfo {
+
+    private final UUID owner;
+    private final UUID partnerId;
+    private final EntityType entityType;
+    private final String name;
+    private final String worldName;
+    private final boolean hidden;
+    // 到期的服务器 tick
+    final int expiryTick;
+
+    PartnerInfo(UUID owner, UUID partnerId, EntityType entityType, String name, String worldName,
+                boolean hidden, int expiryTick) {
+        this.owner = owner;
+        this.partnerId = partnerId;
+        this.entityType = entityType;
+        this.name = name;
+        this.worldName = worldName;
+        this.hidden = hidden;
+        this.expiryTick = expiryTick;
+    }
+
+    /**
+     * 主人的 UUID
+     */
+    public UUID getOwner() {
+        return owner;
+    }
+
+    /**
+     * 伙伴实体的 UUID
+     */
+    public UUID getPartnerId() {
+        return partnerId;
+    }
+
+    public EntityType getEntityType() {
+        return entityType;
+    }
+
+    /**
+     * 伙伴显示名称（含颜色代码），未命名时为 null
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 伙伴所在世界的名称
+     */
+    public String getWorldName() {
+        return worldName;
+    }
+
+    public boolean isHidden() {
+        return hidden;
+    }
+
+    PartnerInfo withHidden(boolean hidden) {
+        return hidden == this.hidden ? this
+                : new PartnerInfo(owner, partnerId, entityType, name, worldName, hidden, expiryTick);
+    }
+}
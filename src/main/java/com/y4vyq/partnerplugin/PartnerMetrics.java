@@ -0,0 +1,247 @@
+package com.y4vyq.partnerplugin;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热路径耗时统计
+ * 每个探针用 LongAdder 记录次数、总耗时与按 2 的幂(微秒)分桶的耗时直方图，多线程写入无锁竞争；
+ * 同时累计当前 tick 内插件的总耗时，每 tick 结束时滚动为“上一 tick 耗时”与平滑平均值。
+ * 开启 JFR 录制时额外提交 {@link ProbeEvent}，可在 JDK Mission Control 中按探针查看
+ */
+final class PartnerMetrics {
+
+    /**
+     * 被统计的热路径
+     */
+    enum Probe {
+        SUMMON("summon"),
+        TELEPORT("teleport"),
+        DAMAGE("damage"),
+        EFFECT_TICK("effect_tick"),
+        FOLLOW_TICK("follow_tick"),
+        EXPIRY_TICK("expiry_tick"),
+        ORPHAN_SWEEP("orphan_sweep"),
+        SAVE("save");
+
+        final String label;
+
+        Probe(String label) {
+            this.label = label;
+        }
+    }
+
+    // 直方图上界：1µs, 2µs, 4µs ... 2^20µs(约 1 秒)，最后一个桶为 +Inf
+    private static final int BUCKETS = 22;
+    private static final EventType PROBE_EVENT = EventType.getEventType(ProbeEvent.class);
+
+    private final Timer[] timers = new Timer[Probe.values().length];
+    private final LongAdder currentTickNanos = new LongAdder();
+    private final AtomicLong lastTickNanos = new AtomicLong();
+    // 平滑平均(纳秒)，只在滚动 tick 的线程写入
+    private volatile double averageTickNanos;
+
+    PartnerMetrics() {
+        for (Probe probe : Probe.values()) {
+            timers[probe.ordinal()] = new Timer();
+        }
+    }
+
+    /**
+     * 开始计时，返回值交给 {@link #stop(Probe, long)}
+     */
+    long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * 结束计时并记录
+     */
+    void stop(Probe probe, long start) {
+        long nanos = System.nanoTime() - start;
+        timers[probe.ordinal()].record(nanos);
+        currentTickNanos.add(nanos);
+
+        if (PROBE_EVENT.isEnabled()) {
+            ProbeEvent event = new ProbeEvent();
+            event.probe = probe.label;
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * tick 结束时调用：把本 tick 的累计耗时滚动为上一 tick 耗时
+     */
+    void rollTick() {
+        long nanos = currentTickNanos.sumThenReset();
+        lastTickNanos.set(nanos);
+        averageTickNanos = averageTickNanos * 0.95 + nanos * 0.05;
+    }
+
+    long getCount(Probe probe) {
+        return timers[probe.ordinal()].count.sum();
+    }
+
+    /**
+     * 平均耗时(纳秒)
+     */
+    double getMeanNanos(Probe probe) {
+        Timer timer = timers[probe.ordinal()];
+        long count = timer.count.sum();
+        return count == 0 ? 0 : (double) timer.totalNanos.sum() / count;
+    }
+
+    /**
+     * 按直方图估算的分位数上界(纳秒)
+     */
+    long getPercentileNanos(Probe probe, double percentile) {
+        Timer timer = timers[probe.ordinal()];
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = timer.buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) return 0;
+
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += counts[i];
+            if (seen >= target) return upperBoundNanos(i);
+        }
+        return timer.maxNanos.get();
+    }
+
+    long getLastTickNanos() {
+        return lastTickNanos.get();
+    }
+
+    double getAverageTickNanos() {
+        return averageTickNanos;
+    }
+
+    /**
+     * 以 Prometheus 文本格式输出所有统计；gauges 为额外的即时值（名称 -> 值）
+     */
+    String toPrometheus(Object... gauges) {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# HELP partner_probe_seconds Time spent in PartnerPlugin hot paths\n");
+        out.append("# TYPE partner_probe_seconds histogram\n");
+        for (Probe probe : Probe.values()) {
+            Timer timer = timers[probe.ordinal()];
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                cumulative += timer.buckets[i].sum();
+                String le = i == BUCKETS - 1 ? "+Inf" : seconds(upperBoundNanos(i));
+                out.append("partner_probe_seconds_bucket{probe=\"").append(probe.label)
+                        .append("\",le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            out.append("partner_probe_seconds_sum{probe=\"").append(probe.label).append("\"} ")
+                    .append(seconds(timer.totalNanos.sum())).append('\n');
+            out.append("partner_probe_seconds_count{probe=\"").append(probe.label).append("\"} ")
+                    .append(timer.count.sum()).append('\n');
+        }
+
+        gauge(out, "partner_tick_seconds", "Plugin time spent during the last tick", seconds(lastTickNanos.get()));
+        gauge(out, "partner_tick_average_seconds", "Smoothed plugin time per tick",
+                seconds((long) averageTickNanos));
+        for (int i = 0; i + 1 < gauges.length; i += 2) {
+            gauge(out, (String) gauges[i], null, String.valueOf(gauges[i + 1]));
+        }
+        return out.toString();
+    }
+
+    /**
+     * 把 Prometheus 文本写入文件（先写临时文件再替换，采集端不会读到半个文件）；会进行磁盘写入，应在异步线程调用
+     */
+    static void write(File file, String text) throws IOException {
+        File folder = file.getParentFile();
+        if (folder != null && !folder.exists()) {
+            folder.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        Files.write(temp.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, String value) {
+        if (help != null) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        }
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1_000_000_000.0);
+    }
+
+    private static long upperBoundNanos(int bucket) {
+        return 1000L << bucket;
+    }
+
+    private static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        if (micros <= 0) return 0;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * 单个探针的计数器
+     */
+    private static final class Timer {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        Timer() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            buckets[bucketOf(nanos)].increment();
+            long max;
+            while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+                // 重试
+            }
+        }
+    }
+
+    /**
+     * 热路径耗时 JFR 事件
+     */
+    @Name("com.y4vyq.partnerplugin.Probe")
+    @Label("Partner Probe")
+    @Category({"PartnerPlugin"})
+    @Description("PartnerPlugin 热路径单次执行耗时")
+    static final class ProbeEvent extends Event {
+        @Label("Probe")
+        String probe;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+}
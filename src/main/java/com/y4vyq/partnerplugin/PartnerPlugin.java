@@ -1,142 +1,406 @@
 package com.y4vyq.partnerplugin;
 
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
 import org.bukkit.*;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.*;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDamageEvent;
 import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.player.PlayerTeleportEvent;
-import org.bukkit.metadata.FixedMetadataValue;
-import org.bukkit.metadata.MetadataValue;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.plugin.java.JavaPluginLoader;
 import org.bukkit.util.Vector;
 
 import java.io.File;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public class PartnerPlugin extends JavaPlugin implements Listener {
 
-    // 粒子效果生成器接口
+    // 粒子效果生成器接口（旧版逐粒子发送，请改用 FrameGenerator，将在下一个版本移除）
+    @Deprecated
     public interface ParticleGenerator {
         void generateEffect(Location location);
     }
 
-    // 元数据键值枚举
-    private enum MetadataKey {
-        PARTNER("MyPartner"),
-        OWNER("PartnerOwner"),
-        HIDDEN("PartnerHidden");
+    /**
+     * 逐帧粒子效果生成器接口
+     * 每 tick 把当前帧的点（相对效果原点）写入插件复用的缓冲区，由插件统一裁剪、限流并批量发送。
+     * 通过 {@link #registerGenerator(String, FrameGenerator)} 注册后即可用 /partner particle 选用
+     */
+    public interface FrameGenerator {
+        /**
+         * 效果持续时间(tick)
+         */
+        int getDuration();
 
-        private final String value;
+        /**
+         * 写入第 tick 帧(从 0 开始)的点
+         */
+        void writeFrame(int tick, ParticleBuffer buffer);
+    }
 
-        MetadataKey(String value) {
-            this.value = value;
-        }
+    /**
+     * 只读伙伴查询服务
+     * 通过 Bukkit ServicesManager 注册，所有方法都可以在任意线程调用且不会阻塞，
+     * 返回的 {@link PartnerInfo} 是调用时刻的不可变快照
+     */
+    public interface PartnerService {
+        /**
+         * 玩家当前是否有伙伴（包括隐藏中的伙伴）
+         */
+        boolean hasPartner(UUID owner);
 
-        public String getKey() {
-            return value;
-        }
+        /**
+         * 玩家的伙伴快照，没有伙伴时返回 null
+         */
+        PartnerInfo getPartner(UUID owner);
+
+        /**
+         * 伙伴剩余存在时间(秒)，没有伙伴时返回 -1
+         */
+        int getRemainingSeconds(UUID owner);
+
+        /**
+         * 所有伙伴的只读视图
+         */
+        Collection<PartnerInfo> getPartners();
+
+        int getPartnerCount();
     }
 
-    // 伙伴管理集合
-    private final Map<UUID, LivingEntity> activePartners = new HashMap<>();
-    private final Map<UUID, BukkitRunnable> removalTasks = new HashMap<>();
-    private final Map<UUID, BukkitRunnable> teleportCooldowns = new HashMap<>();
+    // 调度器（普通服务端走主线程，Folia 走实体/区域调度器，测试时可传入模拟调度器）
+    private final TaskScheduler scheduler;
+    
+    // 伙伴管理集合（区域多线程服务端上会被多个线程访问）
+    private final Map<UUID, LivingEntity> activePartners = new ConcurrentHashMap<>();
+    // 冷却结束时间（服务器 tick），按时间戳惰性判断
+    private final CooldownMap teleportCooldowns = new CooldownMap();
+    private final CooldownMap summonCooldowns = new CooldownMap();
+    // 已隐藏伙伴的主人
+    private final Set<UUID> hiddenPartners = ConcurrentHashMap.newKeySet();
+    // 伙伴寿命队列，由单个重复任务统一处理到期
+    private final ExpiryQueue expiryQueue = new ExpiryQueue();
+    private TaskScheduler.Task expiryTask;
+    
+    // 伙伴状态存储
+    private PartnerStore partnerStore;
+    private TaskScheduler.Task autoSaveTask;
+    
+    // 对外发布的伙伴登记表
+    private final PartnerRegistry registry;
+    
+    // 伙伴身份索引（实体ID -> 主人）
+    private final PartnerIndex partnerIndex = new PartnerIndex(this);
     
-    // 配置相关
-    private FileConfiguration config;
-    private FileConfiguration helpConfig;
+    // 配置快照（重载时整体替换）
+    private volatile PartnerConfig settings;
+    // 按实体类型预编译的生成配方，随配置快照重建
+    private final Map<EntityType, SpawnRecipe> spawnRecipes = new ConcurrentHashMap<>();
     
     // 粒子效果生成器
-    private ParticleGenerator particleGenerator;
+    private final Map<String, FrameGenerator> generators = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile FrameGenerator particleGenerator;
+    private volatile String particleGeneratorName = "default";
+    
+    // 热路径耗时统计
+    private final PartnerMetrics metrics = new PartnerMetrics();
+    private TaskScheduler.Task metricsExportTask;
+    
+    // 按服务端负载调整粒子细节
+    private final QualityGovernor qualityGovernor = new QualityGovernor();
+    // 全局粒子效果引擎
+    private final EffectEngine effectEngine;
+    // 伙伴所在区块的空间索引，用于密度限制与 /partner near、/partner list
+    private final PartnerGrid partnerGrid = new PartnerGrid();
+    // 伙伴跟随引擎
+    private final FollowEngine followEngine;
+    // 生成位置查找，以及正在查找位置、尚未生成伙伴的玩家
+    private final SpawnResolver spawnResolver;
+    private final Set<UUID> pendingSummons = ConcurrentHashMap.newKeySet();
+    // 区块加载时发现的带伙伴标签的实体，分摊到多个 tick 认领或移除
+    private final OrphanSweeper orphanSweeper;
+    
+    public PartnerPlugin() {
+        this.scheduler = TaskScheduler.create(this);
+        this.registry = new PartnerRegistry(scheduler);
+        this.effectEngine = new EffectEngine(scheduler, metrics, qualityGovernor);
+        this.followEngine = new FollowEngine(scheduler, metrics, partnerGrid);
+        this.spawnResolver = new SpawnResolver(scheduler, getLogger());
+        this.orphanSweeper = new OrphanSweeper(scheduler, metrics, this::sweepOrphan);
+    }
+    
+    /**
+     * 不经过服务端插件加载器直接构造，供进程内的模拟服务端（负载与并发测试）使用；
+     * scheduler 为 null 时按运行环境创建调度器
+     */
+    protected PartnerPlugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file,
+                            TaskScheduler scheduler) {
+        super(loader, description, dataFolder, file);
+        this.scheduler = scheduler != null ? scheduler : TaskScheduler.create(this);
+        this.registry = new PartnerRegistry(this.scheduler);
+        this.effectEngine = new EffectEngine(this.scheduler, metrics, qualityGovernor);
+        this.followEngine = new FollowEngine(this.scheduler, metrics, partnerGrid);
+        this.spawnResolver = new SpawnResolver(this.scheduler, getLogger());
+        this.orphanSweeper = new OrphanSweeper(this.scheduler, metrics, this::sweepOrphan);
+    }
+    
+    /**
+     * 伙伴身份索引，供基准测试在不启用插件的情况下登记伙伴
+     */
+    PartnerIndex getPartnerIndex() {
+        return partnerIndex;
+    }
     
-    // 默认配置值
-    private static final String DEFAULT_ENTITY_TYPE = "FOX";
-    private static final int DEFAULT_DURATION = 300;
-    private static final String DEFAULT_SOUND = "ENTITY_FOX_AMBIENT";
-
     @Override
     public void onEnable() {
         getLogger().info(ChatColor.translateAlternateColorCodes('&', "&b[伙伴]&f 伙伴插件已启用！"));
         saveDefaultConfig();
-        reloadConfigs();
+        scheduler.start();
+        
+        // 异步加载伙伴状态，完成后回到全局线程合并
+        partnerStore = new PartnerStore(getDataFolder(), getLogger());
+        partnerStore.load().whenComplete((loaded, error) -> {
+            if (error != null) {
+                getLogger().warning("加载伙伴数据失败: " + error.getMessage());
+            }
+            Map<UUID, PartnerStore.State> states = error != null ? Collections.emptyMap() : loaded;
+            scheduler.run(() -> partnerStore.restore(states));
+        });
+        
+        // 首次加载同步完成，保证命令与事件可用
+        applySettings(PartnerConfig.load(new File(getDataFolder(), "config.yml"), prepareHelpFile(),
+                prepareEffectsFile(), getLogger()));
         Bukkit.getPluginManager().registerEvents(this, this);
+        Bukkit.getServicesManager().register(PartnerService.class, registry, this, ServicePriority.Normal);
         
-        // 初始化粒子生成器
-        initParticleGenerator();
+        // 启动粒子效果引擎、跟随引擎、寿命队列与孤儿清理
+        effectEngine.start();
+        followEngine.start();
+        orphanSweeper.start();
+        expiryTask = scheduler.runRepeating(this::tickExpiry, 1, 1);
         
-        // 定时保存隐藏伙伴
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                saveHiddenPartners();
+        // 插件启用前已加载的区块不会再触发加载事件；区域多线程服务端上无法在此遍历实体，只能等区块重新加载
+        if (!scheduler.isRegionized()) {
+            for (World world : Bukkit.getWorlds()) {
+                for (LivingEntity entity : world.getLivingEntities()) {
+                    if (partnerIndex.isTagged(entity)) {
+                        orphanSweeper.enqueue(entity);
+                    }
+                }
             }
-        }.runTaskTimer(this, 20 * 60 * 5, 20 * 60 * 5);
+        }
     }
 
     @Override
     public void onDisable() {
-        saveHiddenPartners();
+        Bukkit.getServicesManager().unregisterAll(this);
+        savePartners();
         cleanupAllPartners();
+        effectEngine.stop();
+        followEngine.stop();
+        orphanSweeper.stop();
+        if (expiryTask != null) {
+            expiryTask.cancel();
+            expiryTask = null;
+        }
+        if (partnerStore != null) {
+            partnerStore.close(10000);
+        }
+        scheduler.shutdown();
     }
     
     /**
      * 初始化粒子生成器
      */
     private void initParticleGenerator() {
-        String generatorType = config.getString("particle-effect.generator-type", "default").toLowerCase();
-        
-        switch (generatorType) {
-            case "custom":
-                particleGenerator = new ConfigurableParticleGenerator(config);
-                getLogger().info("使用可配置粒子效果生成器");
-                break;
-            case "spiral":
-                particleGenerator = new SpiralParticleGenerator();
-                getLogger().info("使用螺旋粒子效果生成器");
-                break;
-            case "circle":
-                particleGenerator = new CircleParticleGenerator();
-                getLogger().info("使用圆形粒子效果生成器");
-                break;
-            case "default":
-            default:
-                particleGenerator = new DefaultParticleGenerator();
-                getLogger().info("使用默认粒子效果生成器");
+        generators.put("default", new DefaultParticleGenerator());
+        generators.put("spiral", new SpiralParticleGenerator());
+        generators.put("circle", new CircleParticleGenerator());
+        generators.put("custom", new ConfigurableParticleGenerator(settings));
+        
+        // 替换上一次加载的关键帧效果，其他插件注册的生成器保持不变
+        synchronized (generators) {
+            generators.values().removeIf(generator -> generator instanceof KeyframeEffect);
+        }
+        generators.putAll(settings.effects);
+        
+        String generatorType = settings.generatorType;
+        particleGenerator = generators.get(generatorType);
+        if (particleGenerator == null) {
+            particleGenerator = generators.get("default");
+            generatorType = "default";
         }
+        particleGeneratorName = generatorType;
+        getLogger().info("使用粒子效果生成器: " + generatorType);
+    }
+    
+    /**
+     * 获取只读伙伴查询服务
+     */
+    public PartnerService getPartnerService() {
+        return registry;
+    }
+    
+    /**
+     * 注册粒子效果生成器，同名生成器会被替换
+     */
+    public void registerGenerator(String name, FrameGenerator generator) {
+        generators.put(name.toLowerCase(), generator);
+    }
+    
+    /**
+     * 注册旧版粒子效果生成器，同名生成器会被替换
+     * 旧版生成器自行发送粒子，不经过效果引擎的视距裁剪与粒子预算
+     * @deprecated 请实现 {@link FrameGenerator} 并使用 {@link #registerGenerator(String, FrameGenerator)}
+     */
+    @Deprecated
+    public void registerGenerator(String name, ParticleGenerator generator) {
+        registerGenerator(name, new LegacyGenerator(generator));
     }
     
     /**
      * 重新加载配置文件
+     * 在异步线程读取并编译配置，完成后回到全局线程整体替换，onReloaded 在替换后执行
      */
-    private void reloadConfigs() {
-        reloadConfig();
-        config = getConfig();
-        
+    private void reloadConfigs(Runnable onReloaded) {
+        File configFile = new File(getDataFolder(), "config.yml");
+        scheduler.runAsync(() -> {
+            saveDefaultConfig();
+            PartnerConfig loaded = PartnerConfig.load(configFile, prepareHelpFile(), prepareEffectsFile(), getLogger());
+            scheduler.run(() -> {
+                applySettings(loaded);
+                onReloaded.run();
+            });
+        });
+    }
+    
+    /**
+     * 获取实体类型的生成配方，首次使用时编译；类型无法生成时使用配置中的默认类型
+     */
+    private SpawnRecipe recipeFor(EntityType type) {
+        SpawnRecipe recipe = spawnRecipes.get(type);
+        if (recipe == null) {
+            recipe = SpawnRecipe.compile(type, settings);
+            if (recipe == null) {
+                getLogger().warning("实体类型 " + type + " 无法作为伙伴生成，使用 " + settings.entityType);
+                recipe = type == settings.entityType
+                        ? SpawnRecipe.compile(EntityType.valueOf(PartnerConfig.DEFAULT_ENTITY_TYPE), settings)
+                        : recipeFor(settings.entityType);
+            }
+            spawnRecipes.put(type, recipe);
+        }
+        return recipe;
+    }
+    
+    /**
+     * 确保帮助文件存在并返回其路径
+     */
+    private File prepareHelpFile() {
         File helpFile = new File(getDataFolder(), "help.yml");
         if (!helpFile.exists()) {
             saveResource("help.yml", false);
         }
-        helpConfig = YamlConfiguration.loadConfiguration(helpFile);
+        return helpFile;
+    }
+    
+    /**
+     * 确保粒子效果定义文件存在并返回其路径
+     */
+    private File prepareEffectsFile() {
+        File effectsFile = new File(getDataFolder(), "effects.yml");
+        if (!effectsFile.exists()) {
+            saveResource("effects.yml", false);
+        }
+        return effectsFile;
+    }
+    
+    /**
+     * 切换到新的配置快照（全局线程）
+     */
+    private void applySettings(PartnerConfig loaded) {
+        settings = loaded;
+        spawnRecipes.clear();
+        recipeFor(loaded.entityType);
         
         // 重新初始化粒子生成器
         initParticleGenerator();
+        effectEngine.setBudget(loaded.maxParticlesPerTick);
+        effectEngine.setCullFarChunks(loaded.cullFarChunks);
+        orphanSweeper.setBudget(loaded.orphanSweepBudget);
+        qualityGovernor.configure(loaded);
+        followEngine.configure(loaded);
+        
+        // 按配置重新安排自动保存与统计导出
+        scheduleAutoSave();
+        scheduleMetricsExport();
+    }
+    
+    /**
+     * 按 settings.auto-save-interval(分钟) 安排自动保存任务
+     */
+    private void scheduleAutoSave() {
+        if (autoSaveTask != null) {
+            autoSaveTask.cancel();
+        }
+        long interval = 20L * 60 * settings.autoSaveInterval;
+        autoSaveTask = scheduler.runRepeating(this::savePartners, interval, interval);
+    }
+
+    /**
+     * 按 advanced.metrics.export-interval(秒) 安排统计导出任务
+     */
+    private void scheduleMetricsExport() {
+        if (metricsExportTask != null) {
+            metricsExportTask.cancel();
+            metricsExportTask = null;
+        }
+        if (settings.metricsExportInterval > 0) {
+            long interval = 20L * settings.metricsExportInterval;
+            metricsExportTask = scheduler.runRepeating(() -> exportMetrics(null), interval, interval);
+        }
+    }
+    
+    /**
+     * 在当前线程采集统计，在异步线程写入导出文件，完成后把文件路径交给 onExported（可为 null）
+     */
+    private void exportMetrics(Consumer<File> onExported) {
+        File file = new File(getDataFolder(), settings.metricsExportFile);
+        String text = metrics.toPrometheus(
+                "partner_active", activePartners.size(),
+                "partner_following", followEngine.size(),
+                "partner_effects_active", effectEngine.getActiveEffects(),
+                "partner_particles_last_tick", effectEngine.getParticlesLastTick(),
+                "partner_quality_level", qualityGovernor.getLevel().ordinal(),
+                "partner_orphan_queue", orphanSweeper.pendingCount(),
+                "partner_server_mspt", qualityGovernor.getSmoothedMspt());
+        scheduler.runAsync(() -> {
+            try {
+                PartnerMetrics.write(file, text);
+                if (onExported != null) {
+                    onExported.accept(file);
+                }
+            } catch (IOException e) {
+                getLogger().warning("导出统计失败: " + e.getMessage());
+            }
+        });
     }
 
     @Override
     public boolean onCommand(CommandSender sender, Command cmd, String label, String[] args) {
         if (!(sender instanceof Player)) {
-            sendColoredMessage(sender, "&b[伙伴]&f 只有玩家可以使用此命令！");
+            sendMessage(sender, MessageCatalog.Key.PLAYERS_ONLY);
             return true;
         }
 
@@ -158,8 +422,16 @@ public class PartnerPlugin extends JavaPlugin implements Listener {
                 return showPartner(player);
             case "particle":
                 return handleParticleCommand(player, args);
+            case "effects":
+                return handleEffectsCommand(player, args);
+            case "stats":
+                return handleStatsCommand(player, args);
+            case "near":
+                return handleNearCommand(player, args);
+            case "list":
+                return handleListCommand(player, args);
             default:
-                sendColoredMessage(player, "&b[伙伴]&f 未知命令！输入 /partner help 查看帮助");
+                sendMessage(player, MessageCatalog.Key.UNKNOWN_COMMAND);
                 return true;
         }
     }
@@ -168,34 +440,139 @@ public class PartnerPlugin extends JavaPlugin implements Listener {
      * 处理粒子效果命令
      */
     private boolean handleParticleCommand(Player player, String[] args) {
+        String available;
+        synchronized (generators) {
+            available = String.join(", ", generators.keySet());
+        }
         if (args.length < 2) {
-            sendColoredMessage(player, "&b[伙伴]&f 用法: /partner particle <default|spiral|circle|custom>");
+            sendMessage(player, MessageCatalog.Key.PARTICLE_USAGE, available.replace(", ", "|"));
             return false;
         }
         
         String type = args[1].toLowerCase();
-        switch (type) {
-            case "default":
-                particleGenerator = new DefaultParticleGenerator();
-                sendColoredMessage(player, "&b[伙伴]&f 已切换至默认粒子效果");
-                break;
-            case "spiral":
-                particleGenerator = new SpiralParticleGenerator();
-                sendColoredMessage(player, "&b[伙伴]&f 已切换至螺旋粒子效果");
-                break;
-            case "circle":
-                particleGenerator = new CircleParticleGenerator();
-                sendColoredMessage(player, "&b[伙伴]&f 已切换至圆形粒子效果");
-                break;
-            case "custom":
-                particleGenerator = new ConfigurableParticleGenerator(config);
-                sendColoredMessage(player, "&b[伙伴]&f 已切换至配置文件粒子效果");
-                break;
+        FrameGenerator generator = generators.get(type);
+        if (generator == null) {
+            sendMessage(player, MessageCatalog.Key.PARTICLE_UNKNOWN, available);
+            return false;
+        }
+        
+        particleGenerator = generator;
+        particleGeneratorName = type;
+        sendMessage(player, MessageCatalog.Key.PARTICLE_SWITCHED, type);
+        return true;
+    }
+    
+    /**
+     * 处理个人粒子开关命令
+     */
+    private boolean handleEffectsCommand(Player player, String[] args) {
+        if (args.length < 2) {
+            sendMessage(player, effectEngine.isViewerEnabled(player.getUniqueId())
+                    ? MessageCatalog.Key.EFFECTS_STATUS_ON : MessageCatalog.Key.EFFECTS_STATUS_OFF);
+            return true;
+        }
+        
+        switch (args[1].toLowerCase()) {
+            case "on":
+                effectEngine.setViewerEnabled(player.getUniqueId(), true);
+                sendMessage(player, MessageCatalog.Key.EFFECTS_ON);
+                return true;
+            case "off":
+                effectEngine.setViewerEnabled(player.getUniqueId(), false);
+                sendMessage(player, MessageCatalog.Key.EFFECTS_OFF);
+                return true;
             default:
-                sendColoredMessage(player, "&b[伙伴]&f 未知粒子效果类型！可用类型: default, spiral, circle, custom");
+                sendMessage(player, MessageCatalog.Key.EFFECTS_USAGE);
                 return false;
         }
+    }
+    
+    /**
+     * 处理统计命令
+     */
+    private boolean handleStatsCommand(Player player, String[] args) {
+        if (!player.hasPermission("partner.stats")) {
+            sendMessage(player, MessageCatalog.Key.NO_PERMISSION);
+            return false;
+        }
         
+        if (args.length >= 2 && "export".equalsIgnoreCase(args[1])) {
+            exportMetrics(file -> sendMessage(player, MessageCatalog.Key.STATS_EXPORTED, file.getPath()));
+            return true;
+        }
+        
+        sendMessage(player, MessageCatalog.Key.STATS_TIMING,
+                String.format(Locale.ROOT, "%.3f", metrics.getLastTickNanos() / 1e6),
+                String.format(Locale.ROOT, "%.3f", metrics.getAverageTickNanos() / 1e6));
+        sendMessage(player, MessageCatalog.Key.STATS_PARTNERS, activePartners.size(), followEngine.size());
+        sendMessage(player, MessageCatalog.Key.STATS_EFFECTS, effectEngine.getActiveEffects(),
+                effectEngine.getParticlesLastTick());
+        sendMessage(player, MessageCatalog.Key.STATS_QUALITY, qualityGovernor.getLevel().label,
+                String.format(Locale.ROOT, "%.1f", qualityGovernor.getSmoothedMspt()));
+        for (PartnerMetrics.Probe probe : PartnerMetrics.Probe.values()) {
+            long count = metrics.getCount(probe);
+            if (count == 0) continue;
+            sendMessage(player, MessageCatalog.Key.STATS_PROBE, probe.label, count,
+                    String.format(Locale.ROOT, "%.1f", metrics.getMeanNanos(probe) / 1e3),
+                    metrics.getPercentileNanos(probe, 0.99) / 1000);
+        }
+        return true;
+    }
+    
+    /**
+     * 处理附近伙伴查询命令：列出周围若干区块内的伙伴
+     */
+    private boolean handleNearCommand(Player player, String[] args) {
+        if (!player.hasPermission("partner.admin")) {
+            sendMessage(player, MessageCatalog.Key.NO_PERMISSION);
+            return false;
+        }
+        
+        int radius = 2;
+        if (args.length >= 2) {
+            try {
+                radius = Math.max(0, Math.min(8, Integer.parseInt(args[1])));
+            } catch (NumberFormatException ignored) {}
+        }
+        Location loc = player.getLocation();
+        List<PartnerGrid.Located> found = partnerGrid.near(loc.getWorld(), loc.getBlockX() >> 4, loc.getBlockZ() >> 4,
+                radius);
+        sendMessage(player, MessageCatalog.Key.NEAR_HEADER, radius, found.size());
+        int shown = Math.min(found.size(), 20);
+        for (int i = 0; i < shown; i++) {
+            PartnerGrid.Located located = found.get(i);
+            Player owner = Bukkit.getPlayer(located.owner);
+            PartnerInfo info = registry.getPartner(located.owner);
+            sendMessage(player, MessageCatalog.Key.NEAR_ENTRY, owner != null ? owner.getName() : located.owner,
+                    info != null ? info.getEntityType() : "?", located.x, located.z);
+        }
+        if (found.size() > shown) {
+            sendMessage(player, MessageCatalog.Key.NEAR_MORE, found.size() - shown);
+        }
+        return true;
+    }
+    
+    /**
+     * 处理伙伴分布命令：列出世界中伙伴最密集的区块
+     */
+    private boolean handleListCommand(Player player, String[] args) {
+        if (!player.hasPermission("partner.admin")) {
+            sendMessage(player, MessageCatalog.Key.NO_PERMISSION);
+            return false;
+        }
+        
+        World world = player.getWorld();
+        if (args.length >= 2) {
+            world = Bukkit.getWorld(args[1]);
+            if (world == null) {
+                sendMessage(player, MessageCatalog.Key.UNKNOWN_WORLD, args[1]);
+                return false;
+            }
+        }
+        sendMessage(player, MessageCatalog.Key.LIST_HEADER, world.getName(), partnerGrid.size(world));
+        for (PartnerGrid.ChunkCount chunk : partnerGrid.densest(world, 10)) {
+            sendMessage(player, MessageCatalog.Key.LIST_ENTRY, chunk.x, chunk.z, chunk.count);
+        }
         return true;
     }
     
@@ -204,19 +581,18 @@ public class PartnerPlugin extends JavaPlugin implements Listener {
      */
     private boolean handleReloadCommand(Player player) {
         if (player.hasPermission("partner.reload")) {
-            reloadConfigs();
-            sendColoredMessage(player, "&b[伙伴]&f 配置已重载！");
+            reloadConfigs(() -> sendMessage(player, MessageCatalog.Key.RELOADED));
             return true;
         }
-        sendColoredMessage(player, "&b[伙伴]&f 你没有权限执行此命令！");
+        sendMessage(player, MessageCatalog.Key.NO_PERMISSION);
         return false;
     }
     
     /**
-     * 发送彩色消息
+     * 按接收者的语言发送已编译的消息
      */
-    private void sendColoredMessage(CommandSender sender, String message) {
-        sender.sendMessage(ChatColor.translateAlternateColorCodes('&', message));
+    private void sendMessage(CommandSender sender, MessageCatalog.Key key, Object... args) {
+        settings.messages.send(sender, key, args);
     }
     
     /**
@@ -230,6 +606,11 @@ public class PartnerPlugin extends JavaPlugin implements Listener {
         UUID playerId = player.getUniqueId();
         LivingEntity existingPartner = activePartners.get(playerId);
         
+        // 已隐藏时重新显示
+        if (existingPartner != null && hiddenPartners.contains(playerId)) {
+            return showPartner(player);
+        }
+        
         // 已有伙伴时隐藏
         if (existingPartner != null && existingPartner.isValid() && !existingPartner.isDead()) {
             return hidePartner(player);
@@ -238,10 +619,20 @@ public class PartnerPlugin extends JavaPlugin implements Listener {
         // 清理无效伙伴
         if (existingPartner != null) {
             cleanupPartner(playerId);
-            sendColoredMessage(player, "&b[伙伴]&f 正在重新召唤伙伴...");
+            sendMessage(player, MessageCatalog.Key.RESUMMON);
+        }
+
+        // 冷却检查
+        if (onSummonCooldown(player)) {
+            return false;
         }
 
-        return summonPartner(player);
+        // 只在召唤真正开始(而非已有召唤在查找位置)时进入冷却
+        if (!summonPartner(player)) {
+            return false;
+        }
+        startSummonCooldown(player);
+        return true;
     }
     
     /**
@@ -252,14 +643,28 @@ public class PartnerPlugin extends JavaPlugin implements Listener {
         LivingEntity partner = activePartners.get(playerId);
         
         if (partner == null) {
-            sendColoredMessage(player, "&b[伙伴]&f 你还没有伙伴可以隐藏！");
+            sendMessage(player, MessageCatalog.Key.NOTHING_TO_HIDE);
             return false;
         }
         
-        // 设置隐藏元数据
-        partner.setMetadata(MetadataKey.HIDDEN.getKey(), new FixedMetadataValue(this, true));
-        partner.remove();
-        sendColoredMessage(player, "&b[伙伴]&f 伙伴已隐藏！输入 /partner show 重新召唤");
+        if (!hiddenPartners.add(playerId)) {
+            sendMessage(player, MessageCatalog.Key.ALREADY_HIDDEN);
+            return false;
+        }
+        partnerStore.put(captureState(playerId, partner, true));
+        registry.setHidden(playerId, true);
+        followEngine.untrack(playerId);
+        
+        // 软隐藏只切换可见性，否则移除实体
+        boolean softHide = settings.softHide;
+        scheduler.runFor(partner, () -> {
+            if (softHide && partner.isValid()) {
+                recipeFor(partner.getType()).park(partner);
+            } else {
+                removePartnerEntity(partner);
+            }
+        });
+        sendMessage(player, MessageCatalog.Key.HIDE);
         return true;
     }
     
@@ -271,15 +676,49 @@ public class PartnerPlugin extends JavaPlugin implements Listener {
         LivingEntity partner = activePartners.get(playerId);
         
         if (partner == null) {
-            sendColoredMessage(player, "&b[伙伴]&f 你还没有伙伴！");
+            // 没有存活的伙伴时尝试从已保存的状态恢复
+            PartnerStore.State state = partnerStore.get(playerId);
+            if (state != null && state.remainingSeconds > 0) {
+                // 恢复等同于重新召唤，适用相同的条件与冷却
+                if (!canSummonPartner(player) || onSummonCooldown(player)) {
+                    return false;
+                }
+                if (!summonPartner(player, parseEntityType(state.entityType), state.name,
+                        state.remainingSeconds, state.effect, false)) {
+                    return false;
+                }
+                startSummonCooldown(player);
+                return true;
+            }
+            sendMessage(player, MessageCatalog.Key.NO_PARTNER);
             return false;
         }
         
-        if (!partner.hasMetadata(MetadataKey.HIDDEN.getKey())) {
-            sendColoredMessage(player, "&b[伙伴]&f 你的伙伴已经显示出来了！");
+        if (!hiddenPartners.contains(playerId)) {
+            sendMessage(player, MessageCatalog.Key.ALREADY_SHOWN);
             return false;
         }
 
+        // 软隐藏的伙伴直接移到主人身边并恢复可见，失败时重新生成
+        if (partner.isValid() && !partner.isDead()) {
+            spawnResolver.resolve(player.getLocation(), settings.avoidWater).thenAccept(showLoc ->
+                    scheduler.runFor(partner, () -> partner.teleportAsync(showLoc).thenAccept(moved -> {
+                        if (moved) {
+                            hiddenPartners.remove(playerId);
+                            registry.setHidden(playerId, false);
+                            recipeFor(partner.getType()).unpark(partner);
+                            followEngine.track(playerId, partner);
+                            partnerStore.put(captureState(playerId, partner, false));
+                            playSummonEffect(showLoc);
+                            sendMessage(player, MessageCatalog.Key.SHOW);
+                        } else {
+                            removePartnerEntity(partner);
+                            scheduler.runFor(player, () -> respawnPartner(player, partner));
+                        }
+                    })));
+            return true;
+        }
+
         respawnPartner(player, partner);
         return true;
     }
@@ -289,66 +728,35 @@ public class PartnerPlugin extends JavaPlugin implements Listener {
      */
     private void respawnPartner(Player player, LivingEntity oldPartner) {
         // 清除隐藏状态
-        oldPartner.removeMetadata(MetadataKey.HIDDEN.getKey(), this);
-        
-        // 计算生成位置
-        Location spawnLoc = calculateSpawnLocation(player);
-        
-        // 创建新实体
-        LivingEntity newPartner = (LivingEntity) player.getWorld().spawnEntity(spawnLoc, oldPartner.getType());
-        newPartner.setCustomName(oldPartner.getCustomName());
-        newPartner.setCustomNameVisible(oldPartner.isCustomNameVisible());
-        newPartner.setInvulnerable(true);
-        
-        // 复制元数据
-        copyMetadata(oldPartner, newPartner);
-        handleSpecialEntities(player, newPartner);
-        
-        // 更新伙伴映射
-        activePartners.put(player.getUniqueId(), newPartner);
+        UUID playerId = player.getUniqueId();
+        hiddenPartners.remove(playerId);
+        partnerIndex.untag(oldPartner);
+        EntityType type = oldPartner.getType();
+        String name = oldPartner.getCustomName();
         
-        // 播放效果
-        playSummonEffect(spawnLoc);
-        sendColoredMessage(player, "&b[伙伴]&f 伙伴已重新出现！");
-    }
-    
-    /**
-     * 计算生成位置
-     */
-    private Location calculateSpawnLocation(Player player) {
-        Location loc = player.getLocation();
-        Location spawnLoc = loc.add(loc.getDirection().multiply(2));
-        spawnLoc.add(0, 0.5, 0);
-        return spawnLoc;
-    }
-    
-    /**
-     * 复制元数据
-     */
-    private void copyMetadata(Entity source, Entity target) {
-        for (MetadataKey key : MetadataKey.values()) {
-            if (source.hasMetadata(key.getKey())) {
-                for (MetadataValue meta : source.getMetadata(key.getKey())) {
-                    target.setMetadata(key.getKey(), new FixedMetadataValue(this, meta.value()));
-                }
-            }
-        }
+        // 找到生成位置后在其所属线程创建新实体；期间伙伴已被替换或主人下线则放弃
+        spawnResolver.resolve(player.getLocation(), settings.avoidWater).thenAccept(spawnLoc ->
+                spawnResolver.runLoaded(spawnLoc, () -> {
+                    if (!player.isOnline() || activePartners.get(playerId) != oldPartner) return;
+                    LivingEntity newPartner = recipeFor(type).spawn(spawnLoc, player, name, partnerIndex);
+                    
+                    // 更新伙伴映射
+                    activePartners.put(playerId, newPartner);
+                    followEngine.track(playerId, newPartner);
+                    publishPartner(playerId, newPartner);
+                    partnerStore.put(captureState(playerId, newPartner, false));
+                    
+                    // 播放效果
+                    playSummonEffect(spawnLoc);
+                    sendMessage(player, MessageCatalog.Key.SHOW);
+                }));
     }
     
     /**
      * 发送帮助信息
      */
     private void sendHelp(CommandSender sender) {
-        int duration = config.getInt("partner.duration", DEFAULT_DURATION);
-        String entityType = config.getString("partner.entity-type", DEFAULT_ENTITY_TYPE);
-        
-        List<String> helpLines = helpConfig.getStringList("help-messages").stream()
-            .map(line -> line.replace("{duration}", String.valueOf(duration)))
-            .map(line -> line.replace("{entity-type}", entityType))
-            .map(line -> ChatColor.translateAlternateColorCodes('&', line))
-            .collect(Collectors.toList());
-        
-        helpLines.forEach(sender::sendMessage);
+        settings.messages.sendHelp(sender);
     }
 
     /**
@@ -357,76 +765,134 @@ public class PartnerPlugin extends JavaPlugin implements Listener {
     private boolean canSummonPartner(Player player) {
         // 旁观模式检查
         if (player.getGameMode() == GameMode.SPECTATOR) {
-            sendColoredMessage(player, "&b[伙伴]&f 旁观模式下不能召唤伙伴！");
+            sendMessage(player, MessageCatalog.Key.SPECTATOR);
             return false;
         }
         
         // 水中检查
         if (player.isInWater() || player.getLocation().getBlock().isLiquid()) {
-            sendColoredMessage(player, "&b[伙伴]&f 在水中不能召唤伙伴！");
+            sendMessage(player, MessageCatalog.Key.IN_WATER);
             return false;
         }
         
         // 载具检查
         if (player.isInsideVehicle()) {
-            sendColoredMessage(player, "&b[伙伴]&f 在坐骑或载具上不能召唤伙伴！");
+            sendMessage(player, MessageCatalog.Key.IN_VEHICLE);
             return false;
         }
         
-        // 冷却检查
-        if (teleportCooldowns.containsKey(player.getUniqueId())) {
-            sendColoredMessage(player, "&b[伙伴]&f 你的伙伴正在冷却中，请稍后再试！");
-            return false;
+        return true;
+    }
+
+    /**
+     * 玩家剩余冷却(tick)，拥有绕过权限时始终为 0
+     */
+    private int cooldownRemaining(CooldownMap cooldowns, Player player) {
+        int remaining = cooldowns.remaining(player.getUniqueId(), scheduler.currentTick());
+        if (remaining > 0 && player.hasPermission(settings.bypassCooldownPermission)) {
+            return 0;
         }
-        
+        return remaining;
+    }
+
+    /**
+     * 召唤冷却中时提示剩余时间并返回 true
+     */
+    private boolean onSummonCooldown(Player player) {
+        int cooldown = cooldownRemaining(summonCooldowns, player);
+        if (cooldown <= 0) return false;
+        sendMessage(player, MessageCatalog.Key.COOLDOWN, (cooldown + 19) / 20);
         return true;
     }
 
+    private void startSummonCooldown(Player player) {
+        summonCooldowns.start(player.getUniqueId(), scheduler.currentTick(),
+                settings.summonCooldownTicks);
+    }
+
     /**
      * 召唤伙伴实体
      */
     private boolean summonPartner(Player player) {
-        // 获取实体类型配置
-        String entityTypeName = config.getString("partner.entity-type", DEFAULT_ENTITY_TYPE);
-        EntityType entityType = parseEntityType(entityTypeName);
-        
-        // 获取配置参数
-        int duration = config.getInt("partner.duration", DEFAULT_DURATION);
-        String customName = ChatColor.translateAlternateColorCodes('&', 
-                config.getString("partner.name", "&6&l我的伙伴"));
-        
-        // 计算生成位置
-        Location spawnLoc = calculateSpawnLocation(player);
-        
-        // 播放生成效果
-        playSummonEffect(spawnLoc);
-        
-        // 生成实体
-        LivingEntity partner = (LivingEntity) player.getWorld().spawnEntity(spawnLoc, entityType);
-        partner.setCustomName(customName);
-        partner.setCustomNameVisible(config.getBoolean("partner.show-name", true));
-        partner.setInvulnerable(true);
+        PartnerConfig current = settings;
+        return summonPartner(player, current.entityType, current.customName, current.duration, particleGeneratorName,
+                false);
+    }
+    
+    /**
+     * 按指定参数召唤伙伴实体
+     * 先异步查找安全的生成位置，找到后在该位置所属线程生成；查找期间重复召唤会被忽略。
+     * 生成位置附近伙伴过多时拒绝召唤，自动恢复(restoring)的伙伴则留在存储中，等主人稍后 /partner show
+     */
+    private boolean summonPartner(Player player, EntityType entityType, String customName, int duration, String effect,
+                                  boolean restoring) {
+        UUID playerId = player.getUniqueId();
+        if (!pendingSummons.add(playerId)) {
+            return false;
+        }
         
-        // 设置元数据
-        partner.setMetadata(MetadataKey.PARTNER.getKey(), new FixedMetadataValue(this, true));
-        partner.setMetadata(MetadataKey.OWNER.getKey(), 
-                new FixedMetadataValue(this, player.getUniqueId().toString()));
+        spawnResolver.resolve(player.getLocation(), settings.avoidWater).thenAccept(spawnLoc ->
+                spawnResolver.runLoaded(spawnLoc, () -> {
+                    pendingSummons.remove(playerId);
+                    if (!player.isOnline() || activePartners.containsKey(playerId)) return;
+                    if (crowded(spawnLoc)) {
+                        sendMessage(player, restoring ? MessageCatalog.Key.DENSITY_DEFERRED
+                                : MessageCatalog.Key.DENSITY_LIMIT);
+                        return;
+                    }
+                    spawnPartner(player, spawnLoc, entityType, customName, duration, effect);
+                }));
+        return true;
+    }
+    
+    /**
+     * 生成位置所在区块或周围区域的伙伴数是否已达上限
+     */
+    private boolean crowded(Location location) {
+        PartnerConfig current = settings;
+        World world = location.getWorld();
+        int chunkX = location.getBlockX() >> 4;
+        int chunkZ = location.getBlockZ() >> 4;
+        if (current.maxPartnersPerChunk > 0
+                && partnerGrid.count(world, chunkX, chunkZ, 0) >= current.maxPartnersPerChunk) {
+            return true;
+        }
+        return current.maxPartnersPerArea > 0
+                && partnerGrid.count(world, chunkX, chunkZ, current.densityRadius) >= current.maxPartnersPerArea;
+    }
+    
+    /**
+     * 在已加载的生成位置创建伙伴并登记（生成位置所属线程）
+     */
+    private void spawnPartner(Player player, Location spawnLoc, EntityType entityType, String customName,
+                              int duration, String effect) {
+        long start = metrics.start();
         
-        // 特殊实体处理
-        handleSpecialEntities(player, partner);
+        // 播放生成效果（优先使用该伙伴记录的效果）
+        FrameGenerator generator = generators.get(effect);
+        if (generator != null) {
+            playEffect(spawnLoc, generator);
+        } else {
+            playSummonEffect(spawnLoc);
+            effect = particleGeneratorName;
+        }
         
-        // 应用属性
-        applyEntityAttributes(partner);
+        // 按配方生成实体（名称、属性、驯服与身份标记在加入世界前完成）
+        LivingEntity partner = recipeFor(entityType).spawn(spawnLoc, player, customName, partnerIndex);
         
         // 更新集合
         activePartners.put(player.getUniqueId(), partner);
+        followEngine.track(player.getUniqueId(), partner);
         startRemovalTimer(player.getUniqueId(), duration);
+        publishPartner(player.getUniqueId(), partner);
+        partnerStore.put(new PartnerStore.State(player.getUniqueId(), false, entityType.name(), customName,
+                duration, effect));
         
         // 播放音效
         playSummonSound(player);
         
-        sendColoredMessage(player, "&b[伙伴]&f 伙伴已出现！持续 " + duration + "秒");
-        return true;
+        sendMessage(player, MessageCatalog.Key.SUMMON, duration);
+        metrics.stop(PartnerMetrics.Probe.SUMMON, start);
     }
     
     /**
@@ -438,23 +904,17 @@ public class PartnerPlugin extends JavaPlugin implements Listener {
             if (type.isAlive()) return type;
         } catch (IllegalArgumentException ignored) {}
         
-        getLogger().warning("无效的实体类型: " + typeName + "，使用默认值 " + DEFAULT_ENTITY_TYPE);
-        return EntityType.valueOf(DEFAULT_ENTITY_TYPE);
+        getLogger().warning("无效的实体类型: " + typeName + "，使用默认值 " + settings.entityType);
+        return settings.entityType;
     }
     
     /**
      * 播放召唤音效
      */
     private void playSummonSound(Player player) {
-        String soundName = config.getString("summon-effect.sound", DEFAULT_SOUND);
-        float volume = (float) config.getDouble("summon-effect.volume", 1.0);
-        float pitch = (float) config.getDouble("summon-effect.pitch", 1.0);
-        
-        try {
-            Sound sound = Sound.valueOf(soundName);
-            player.playSound(player.getLocation(), sound, volume, pitch);
-        } catch (IllegalArgumentException e) {
-            getLogger().warning("无效的音效: " + soundName);
+        PartnerConfig current = settings;
+        if (current.summonSound != null) {
+            player.playSound(player.getLocation(), current.summonSound, current.summonVolume, current.summonPitch);
         }
     }
     
@@ -463,136 +923,148 @@ public class PartnerPlugin extends JavaPlugin implements Listener {
      */
     private void playSummonEffect(Location location) {
         if (particleGenerator != null) {
-            particleGenerator.generateEffect(location);
+            playEffect(location, particleGenerator);
         } else {
             // 回退到默认粒子效果
-            new DefaultParticleGenerator().generateEffect(location);
+            effectEngine.play(location, new DefaultParticleGenerator());
         }
     }
     
     /**
-     * 处理特殊实体（可驯服动物等）
+     * 播放生成器的效果，旧版生成器直接在该位置调用
      */
-    private void handleSpecialEntities(Player player, LivingEntity entity) {
-        // 狐狸特殊处理
-        if (entity instanceof Fox) {
-            handleFoxEntity(player, (Fox) entity);
-        } 
-        // 可驯服动物处理（仅处理实现了Tameable接口的实体）
-        else if (entity instanceof Tameable) {
-            Tameable tameable = (Tameable) entity;
-            tameable.setTamed(true);
-            tameable.setOwner(player);
+    @SuppressWarnings("deprecation")
+    private void playEffect(Location location, FrameGenerator generator) {
+        if (generator instanceof LegacyGenerator) {
+            ((LegacyGenerator) generator).generator.generateEffect(location.clone());
+        } else {
+            effectEngine.play(location, generator);
         }
     }
     
     /**
-     * 处理狐狸实体（修复核心错误：移除setTamed和setOwner调用）
+     * 启动移除计时器（重新召唤时替换原有计时）
      */
-    private void handleFoxEntity(Player player, Fox fox) {
-        try {
-            // 使用反射调用Fox类的addTrustedUUID方法（狐狸的信任机制）
-            Method addTrusted = Fox.class.getMethod("addTrustedUUID", UUID.class);
-            addTrusted.invoke(fox, player.getUniqueId());
-            getLogger().info("成功将玩家 " + player.getName() + " 添加为狐狸的信任对象");
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            // 反射失败时的降级处理（不调用setTamed/setOwner，仅日志提示）
-            getLogger().warning("无法设置狐狸的信任对象，可能是API版本不兼容: " + e.getMessage());
-        }
+    private void startRemovalTimer(UUID playerId, int duration) {
+        expiryQueue.schedule(playerId, scheduler.currentTick() + 20 * duration);
     }
     
     /**
-     * 应用实体属性
+     * 伙伴剩余存在时间(秒)，没有计时时返回 0
      */
-    private void applyEntityAttributes(LivingEntity entity) {
-        ConfigurationSection attributes = config.getConfigurationSection("entity-attributes");
-        if (attributes == null) return;
-        
-        // 生命值
-        if (attributes.isDouble("health")) {
-            double health = attributes.getDouble("health");
-            entity.setHealth(Math.min(health, entity.getMaxHealth()));
-        }
-        
-        // AI控制
-        if (attributes.isBoolean("ai")) {
-            entity.setAI(attributes.getBoolean("ai"));
-        }
-        
-        // 发光效果
-        if (attributes.isBoolean("glowing")) {
-            entity.setGlowing(attributes.getBoolean("glowing"));
-        }
-        
-        // 静音
-        if (attributes.isBoolean("silent")) {
-            entity.setSilent(attributes.getBoolean("silent"));
-        }
-        
-        // 年龄设置
-        if (attributes.isBoolean("age") && entity instanceof Ageable) {
-            Ageable ageable = (Ageable) entity;
-            if (attributes.getBoolean("age")) {
-                ageable.setAdult();
-            } else {
-                ageable.setBaby();
-            }
-        }
+    private int remainingSeconds(UUID playerId) {
+        int ticks = expiryQueue.remaining(playerId, scheduler.currentTick());
+        return ticks <= 0 ? 0 : ticks / 20;
     }
-
+    
     /**
-     * 启动移除计时器
+     * 把伙伴的当前状态发布到登记表与区块空间索引
      */
-    private void startRemovalTimer(UUID playerId, int duration) {
-        // 取消现有任务
-        if (removalTasks.containsKey(playerId)) {
-            removalTasks.get(playerId).cancel();
-        }
+    private void publishPartner(UUID ownerId, LivingEntity partner) {
+        int now = scheduler.currentTick();
+        int remaining = Math.max(0, expiryQueue.remaining(ownerId, now));
+        registry.put(new PartnerInfo(ownerId, partner.getUniqueId(), partner.getType(), partner.getCustomName(),
+                partner.getWorld().getName(), hiddenPartners.contains(ownerId), now + remaining));
+        partnerGrid.update(ownerId, partner.getLocation());
+    }
+    
+    /**
+     * 每 tick 处理到期的伙伴，并滚动 tick 耗时统计
+     */
+    private void tickExpiry() {
+        metrics.rollTick();
+        long start = metrics.start();
+        expiryQueue.expire(scheduler.currentTick(), this::expirePartner);
+        metrics.stop(PartnerMetrics.Probe.EXPIRY_TICK, start);
+    }
+    
+    /**
+     * 伙伴寿命到期
+     */
+    private void expirePartner(UUID playerId) {
+        partnerStore.remove(playerId);
+        registry.remove(playerId);
+        partnerGrid.remove(playerId);
+        followEngine.untrack(playerId);
+        LivingEntity partner = activePartners.remove(playerId);
+        if (partner == null) return;
         
-        BukkitRunnable removalTask = new BukkitRunnable() {
-            @Override
-            public void run() {
-                LivingEntity partner = activePartners.remove(playerId);
-                if (partner == null) return;
-                
+        // 隐藏中的伙伴静默消失
+        boolean visible = !hiddenPartners.remove(playerId);
+        PartnerConfig current = settings;
+        scheduler.runFor(partner, () -> {
+            if (visible) {
                 // 播放消失效果
                 Location loc = partner.getLocation();
-                loc.getWorld().spawnParticle(Particle.CLOUD, loc, 30, 0.5, 0.5, 0.5, 0.1);
+                effectEngine.play(loc, current.despawnEffect);
                 
                 // 播放音效
-                try {
-                    loc.getWorld().playSound(loc, Sound.valueOf("ENTITY_FOX_SLEEP"), 0.8f, 1.2f);
-                } catch (IllegalArgumentException e) {
-                    try {
-                        loc.getWorld().playSound(loc, Sound.valueOf("ENTITY_CAT_PURR"), 0.8f, 1.2f);
-                    } catch (IllegalArgumentException ignored) {}
-                }
-                
-                // 移除实体
-                if (!partner.isDead()) {
-                    partner.remove();
+                if (current.despawnSound != null) {
+                    loc.getWorld().playSound(loc, current.despawnSound, current.despawnVolume, current.despawnPitch);
                 }
-                
-                removalTasks.remove(playerId);
             }
-        };
-        
-        removalTask.runTaskLater(this, 20 * duration);
-        removalTasks.put(playerId, removalTask);
+            
+            // 移除实体
+            removePartnerEntity(partner);
+        });
     }
     
     /**
      * 清理伙伴
      */
     private void cleanupPartner(UUID playerId) {
+        hiddenPartners.remove(playerId);
+        registry.remove(playerId);
+        partnerGrid.remove(playerId);
+        followEngine.untrack(playerId);
         LivingEntity partner = activePartners.remove(playerId);
-        if (partner != null && !partner.isDead()) {
-            partner.remove();
+        if (partner != null) {
+            // 身份索引可在任意线程注销；已失效的实体上的实体任务可能不再执行
+            partnerIndex.untag(partner);
+            scheduler.runFor(partner, () -> removePartnerEntity(partner));
         }
+        expiryQueue.cancel(playerId);
+    }
+    
+    /**
+     * 把伙伴收起为存储中的状态并移除实体，剩余寿命暂停计时，没有伙伴时返回 false
+     */
+    private boolean stashPartner(UUID ownerId) {
+        LivingEntity partner = activePartners.get(ownerId);
+        if (partner == null) return false;
         
-        BukkitRunnable task = removalTasks.remove(playerId);
-        if (task != null) {
-            task.cancel();
+        // 先记录剩余时间再取消计时
+        boolean hidden = hiddenPartners.contains(ownerId);
+        partnerStore.put(captureState(ownerId, partner, hidden));
+        activePartners.remove(ownerId);
+        hiddenPartners.remove(ownerId);
+        expiryQueue.cancel(ownerId);
+        registry.remove(ownerId);
+        partnerGrid.remove(ownerId);
+        followEngine.untrack(ownerId);
+        scheduler.runFor(partner, () -> removePartnerEntity(partner));
+        return true;
+    }
+    
+    /**
+     * 按存储中的状态恢复玩家收起的伙伴，隐藏中的伙伴留待 /partner show
+     */
+    private void restorePartner(Player player) {
+        UUID playerId = player.getUniqueId();
+        if (activePartners.containsKey(playerId)) return;
+        
+        PartnerStore.State state = partnerStore.get(playerId);
+        if (state == null || state.hidden || state.remainingSeconds <= 0) return;
+        summonPartner(player, parseEntityType(state.entityType), state.name, state.remainingSeconds, state.effect, true);
+    }
+    
+    /**
+     * 移除伙伴实体并注销其身份
+     */
+    private void removePartnerEntity(LivingEntity partner) {
+        partnerIndex.untag(partner);
+        if (!partner.isDead()) {
+            partner.remove();
         }
     }
     
@@ -602,353 +1074,362 @@ public class PartnerPlugin extends JavaPlugin implements Listener {
     private void cleanupAllPartners() {
         // 清理实体
         activePartners.values().stream()
-            .filter(partner -> partner != null && !partner.isDead())
-            .forEach(Entity::remove);
+            .filter(Objects::nonNull)
+            .forEach(this::removePartnerEntity);
         activePartners.clear();
+        hiddenPartners.clear();
+        registry.clear();
+        partnerGrid.clear();
+        followEngine.clear();
+        partnerIndex.clear();
         
-        // 取消任务
-        removalTasks.values().forEach(BukkitRunnable::cancel);
-        removalTasks.clear();
-        
-        teleportCooldowns.values().forEach(BukkitRunnable::cancel);
+        // 取消计时
+        expiryQueue.clear();
         teleportCooldowns.clear();
+        summonCooldowns.clear();
     }
     
     /**
-     * 保存隐藏伙伴状态
+     * 保存所有伙伴的当前状态（实际写盘在存储线程完成）
      */
-    private void saveHiddenPartners() {
-        long hiddenCount = activePartners.values().stream()
-            .filter(partner -> partner != null && partner.hasMetadata(MetadataKey.HIDDEN.getKey()))
-            .count();
-            
-        if (hiddenCount > 0) {
-            getLogger().info(ChatColor.translateAlternateColorCodes('&', 
-                "&b[伙伴]&f 保存了 " + hiddenCount + " 个隐藏伙伴"));
+    private void savePartners() {
+        if (partnerStore == null) return;
+        long start = metrics.start();
+        for (Map.Entry<UUID, LivingEntity> entry : activePartners.entrySet()) {
+            LivingEntity partner = entry.getValue();
+            if (partner == null) continue;
+            partnerStore.put(captureState(entry.getKey(), partner, hiddenPartners.contains(entry.getKey())));
         }
+        metrics.stop(PartnerMetrics.Probe.SAVE, start);
+    }
+    
+    /**
+     * 根据伙伴实体与剩余时间生成状态记录
+     */
+    private PartnerStore.State captureState(UUID ownerId, LivingEntity partner, boolean hidden) {
+        int remaining = remainingSeconds(ownerId);
+        PartnerStore.State previous = partnerStore.get(ownerId);
+        String effect = previous != null ? previous.effect : particleGeneratorName;
+        return new PartnerStore.State(ownerId, hidden, partner.getType().name(), partner.getCustomName(),
+                remaining, effect);
     }
     
     // ================== 事件处理器 ================== //
     
     @EventHandler
     public void onPartnerDamage(EntityDamageEvent event) {
-        if (event.getEntity().hasMetadata(MetadataKey.PARTNER.getKey())) {
+        long start = metrics.start();
+        Entity entity = event.getEntity();
+        if (partnerIndex.isPartner(entity)) {
             event.setCancelled(true);
-            event.getEntity().setFireTicks(0);
+            entity.setFireTicks(0);
         }
+        metrics.stop(PartnerMetrics.Probe.DAMAGE, start);
+    }
+    
+    @EventHandler
+    public void onServerTickEnd(ServerTickEndEvent event) {
+        // 按服务端耗时调整粒子细节（Folia 不触发此事件，粒子保持完整质量）
+        qualityGovernor.record(event.getTickDuration());
     }
     
     @EventHandler
     public void onPartnerDeath(EntityDeathEvent event) {
         Entity entity = event.getEntity();
-        if (!entity.hasMetadata(MetadataKey.PARTNER.getKey())) return;
+        UUID ownerId = partnerIndex.getOwner(entity);
+        if (ownerId == null) return;
+        
+        partnerIndex.untag(entity);
+        // 只处理主人当前登记的伙伴，旧实体的死亡不影响新伙伴
+        if (activePartners.get(ownerId) != entity) return;
+        activePartners.remove(ownerId);
+        hiddenPartners.remove(ownerId);
+        registry.remove(ownerId);
+        partnerGrid.remove(ownerId);
+        followEngine.untrack(ownerId);
+        expiryQueue.cancel(ownerId);
+        partnerStore.remove(ownerId);
+        
+        Player player = Bukkit.getPlayer(ownerId);
+        if (player != null) {
+            sendMessage(player, MessageCatalog.Key.DEATH);
+        }
+    }
+    
+    @EventHandler
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        // 崩溃或未完成的关闭会把伙伴留在区块存档中，只登记到清理队列，由清理任务按预算处理
+        for (Entity entity : event.getEntities()) {
+            if (entity instanceof LivingEntity && partnerIndex.isTagged(entity)) {
+                orphanSweeper.enqueue((LivingEntity) entity);
+            }
+        }
+    }
+    
+    /**
+     * 处理一个带伙伴标签的实体（实体所在线程）
+     * 仍是主人当前的伙伴时重新登记；主人在线且有待恢复的伙伴时直接认领，免去重新生成；其余情况移除
+     */
+    private void sweepOrphan(LivingEntity entity) {
+        UUID ownerId = partnerIndex.taggedOwner(entity);
+        if (ownerId == null) return;
+        entity.setPersistent(false);
         
-        String ownerIdStr = null;
+        LivingEntity active = activePartners.get(ownerId);
+        if (active != null && active.getUniqueId().equals(entity.getUniqueId())) {
+            partnerIndex.adopt(entity, ownerId);
+            return;
+        }
+        if (active == null && reclaimOrphan(ownerId, entity)) return;
+        removePartnerEntity(entity);
+    }
+    
+    /**
+     * 把留存的伙伴实体交还给在线的主人，按存储中的剩余时间继续计时
+     */
+    private boolean reclaimOrphan(UUID ownerId, LivingEntity entity) {
+        Player owner = Bukkit.getPlayer(ownerId);
+        PartnerStore.State state = partnerStore.get(ownerId);
+        if (owner == null || state == null || state.hidden || state.remainingSeconds <= 0) return false;
+        if (!entity.getWorld().equals(owner.getWorld())) return false;
+        
+        // 与召唤共用标记，避免同时认领和生成
+        if (!pendingSummons.add(ownerId)) return false;
         try {
-            ownerIdStr = entity.getMetadata(MetadataKey.OWNER.getKey()).get(0).asString();
-            UUID ownerId = UUID.fromString(ownerIdStr);
-            
-            activePartners.remove(ownerId);
-            
-            BukkitRunnable task = removalTasks.remove(ownerId);
-            if (task != null) task.cancel();
+            if (activePartners.putIfAbsent(ownerId, entity) != null) return false;
+            partnerIndex.adopt(entity, ownerId);
+            recipeFor(entity.getType()).unpark(entity);
+            followEngine.track(ownerId, entity);
+            startRemovalTimer(ownerId, state.remainingSeconds);
+            publishPartner(ownerId, entity);
+            return true;
+        } finally {
+            pendingSummons.remove(ownerId);
+        }
+    }
+    
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        // 主人下线时收起伙伴，在线伙伴数只随在线玩家变化
+        stashPartner(event.getPlayer().getUniqueId());
+    }
+    
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        scheduler.runFor(player, () -> {
+            if (player.isOnline()) {
+                restorePartner(player);
+            }
+        });
+    }
+    
+    @EventHandler
+    public void onEntitiesUnload(EntitiesUnloadEvent event) {
+        // 伙伴所在区块卸载时收起伙伴，主人仍在线时在主人身边恢复
+        for (Entity entity : event.getEntities()) {
+            UUID ownerId = partnerIndex.getOwner(entity);
+            if (ownerId == null || activePartners.get(ownerId) != entity) continue;
+            if (!stashPartner(ownerId)) continue;
             
-            Player player = Bukkit.getPlayer(ownerId);
-            if (player != null) {
-                sendColoredMessage(player, "&b[伙伴]&f 你的伙伴死亡了！");
+            Player owner = Bukkit.getPlayer(ownerId);
+            if (owner != null) {
+                scheduler.runFor(owner, () -> restorePartner(owner));
             }
-        } catch (IllegalArgumentException e) {
-            getLogger().warning("无效的UUID: " + (ownerIdStr != null ? ownerIdStr : "null"));
         }
     }
     
     @EventHandler
     public void onPlayerTeleport(PlayerTeleportEvent event) {
+        long start = metrics.start();
+        try {
+            handlePlayerTeleport(event);
+        } finally {
+            metrics.stop(PartnerMetrics.Probe.TELEPORT, start);
+        }
+    }
+    
+    /**
+     * 伙伴随主人传送
+     */
+    private void handlePlayerTeleport(PlayerTeleportEvent event) {
         Player player = event.getPlayer();
         UUID playerId = player.getUniqueId();
         
         LivingEntity partner = activePartners.get(playerId);
         if (partner == null) return;
         
+        // 跳过隐藏伙伴
+        if (hiddenPartners.contains(playerId)) return;
+        
         // 检查伙伴状态
         if (partner.isDead() || !partner.isValid()) {
-            activePartners.remove(playerId);
+            cleanupPartner(playerId);
             return;
         }
         
-        // 跳过隐藏伙伴
-        if (partner.hasMetadata(MetadataKey.HIDDEN.getKey())) return;
+        // 未开启随主人传送时由跟随引擎或原版 AI 处理
+        if (!settings.teleportWithOwner) return;
         
         Location to = event.getTo();
         if (to == null) return;
         
-        // 跨世界传送
-        if (!event.getFrom().getWorld().equals(to.getWorld())) {
-            handleCrossWorldTeleport(player, partner, to);
-        } 
-        // 同世界传送
-        else {
-            handleSameWorldTeleport(player, partner, to);
+        // 同世界传送受冷却限制，跨世界传送总是跟随
+        boolean crossWorld = !event.getFrom().getWorld().equals(to.getWorld());
+        if (!crossWorld) {
+            if (cooldownRemaining(teleportCooldowns, player) > 0) return;
+            teleportCooldowns.start(playerId, scheduler.currentTick(),
+                    settings.teleportCooldownTicks);
+        }
+        
+        // 传送事件在主人移动之前触发，此时主人仍在出发点，以事件的目的地作为伙伴的目标位置
+        Location destination = to.clone();
+        scheduler.runFor(player, () -> handoffPartner(player, partner, destination, crossWorld));
+    }
+    
+    /**
+     * 把伙伴移动到主人传送的目的地 to 附近（主人所在线程）
+     * 先异步预加载目标区块并查找安全位置，再用异步传送移动现有伙伴；传送失败时在目标位置重新生成
+     */
+    private void handoffPartner(Player player, LivingEntity partner, Location to, boolean crossWorld) {
+        UUID playerId = player.getUniqueId();
+        if (!player.isOnline() || activePartners.get(playerId) != partner || hiddenPartners.contains(playerId)) {
+            return;
         }
+        
+        // 交接期间暂停跟随，避免跟随引擎同时传送伙伴
+        followEngine.untrack(playerId);
+        spawnResolver.resolve(to, settings.avoidWater).thenAccept(destination ->
+                scheduler.runFor(partner, () -> partner.teleportAsync(destination).thenAccept(moved -> {
+                    if (activePartners.get(playerId) != partner) return;
+                    if (!moved) {
+                        replacePartner(player, partner, destination, crossWorld);
+                        return;
+                    }
+                    if (!hiddenPartners.contains(playerId)) {
+                        followEngine.track(playerId, partner);
+                    }
+                    publishPartner(playerId, partner);
+                    if (crossWorld) {
+                        sendMessage(player, MessageCatalog.Key.WORLD_CHANGE);
+                    }
+                })));
     }
     
     /**
-     * 处理跨世界传送
+     * 无法传送时移除原伙伴，并在目标位置重新生成(确认其区块已加载)
      */
-    private void handleCrossWorldTeleport(Player player, LivingEntity partner, Location to) {
-        partner.remove();
+    private void replacePartner(Player player, LivingEntity partner, Location destination, boolean crossWorld) {
+        UUID playerId = player.getUniqueId();
+        SpawnRecipe recipe = recipeFor(partner.getType());
+        String name = partner.getCustomName();
+        scheduler.runFor(partner, () -> removePartnerEntity(partner));
         
-        Location newLoc = to.clone().add(player.getLocation().getDirection().multiply(2));
-        newLoc.add(0, 0.5, 0);
+        spawnResolver.runLoaded(destination, () -> {
+            if (activePartners.get(playerId) != partner) return;
+            LivingEntity newPartner = recipe.spawn(destination, player, name, partnerIndex);
+            activePartners.put(playerId, newPartner);
+            if (!hiddenPartners.contains(playerId)) {
+                followEngine.track(playerId, newPartner);
+            }
+            publishPartner(playerId, newPartner);
+            if (crossWorld) {
+                sendMessage(player, MessageCatalog.Key.WORLD_CHANGE);
+            }
+        });
+    }
+    
+    // ================== 粒子效果生成器实现 ================== //
+    
+    /**
+     * 旧版生成器的适配器：不产生帧，由 {@link #playEffect} 识别后直接调用旧版接口
+     */
+    @SuppressWarnings("deprecation")
+    private static final class LegacyGenerator implements FrameGenerator {
+        final ParticleGenerator generator;
         
-        LivingEntity newPartner = (LivingEntity) to.getWorld().spawnEntity(newLoc, partner.getType());
-        newPartner.setCustomName(partner.getCustomName());
-        newPartner.setCustomNameVisible(partner.isCustomNameVisible());
-        newPartner.setInvulnerable(true);
+        LegacyGenerator(ParticleGenerator generator) {
+            this.generator = generator;
+        }
         
-        copyMetadata(partner, newPartner);
-        handleSpecialEntities(player, newPartner);
+        @Override
+        public int getDuration() {
+            return 0;
+        }
         
-        activePartners.put(player.getUniqueId(), newPartner);
-        sendColoredMessage(player, "&b[伙伴]&f 伙伴已传送到新世界！");
+        @Override
+        public void writeFrame(int tick, ParticleBuffer buffer) {
+        }
     }
     
     /**
-     * 处理同世界传送
+     * 预计算形状生成器：逐帧把缓存的偏移数组写入缓冲区
      */
-    private void handleSameWorldTeleport(Player player, LivingEntity partner, Location to) {
-        if (teleportCooldowns.containsKey(player.getUniqueId())) return;
+    static class ShapeGenerator implements FrameGenerator {
+        private final Particle particle;
+        private final ShapeCache.Shape shape;
+        private final int duration;
         
-        Location teleportLoc = to.clone().add(player.getLocation().getDirection().multiply(2));
-        teleportLoc.add(0, 0.5, 0);
-        partner.teleport(teleportLoc);
+        ShapeGenerator(Particle particle, ShapeCache.Shape shape, int duration) {
+            this.particle = particle;
+            this.shape = shape;
+            this.duration = duration;
+        }
+        
+        @Override
+        public int getDuration() {
+            return duration;
+        }
         
-        // 设置传送冷却
-        BukkitRunnable cooldown = new BukkitRunnable() {
-            @Override
-            public void run() {
-                teleportCooldowns.remove(player.getUniqueId());
+        @Override
+        public void writeFrame(int tick, ParticleBuffer buffer) {
+            buffer.particle(particle);
+            int frame = tick % shape.frameCount();
+            double[] xs = shape.x;
+            double[] ys = shape.y;
+            double[] zs = shape.z;
+            for (int i = shape.start(frame), end = shape.end(frame); i < end; i++) {
+                buffer.add(xs[i], ys[i], zs[i]);
             }
-        };
-        cooldown.runTaskLater(this, 20);
-        teleportCooldowns.put(player.getUniqueId(), cooldown);
+        }
     }
     
-    // ================== 粒子效果生成器实现 ================== //
-    
     /**
      * 默认粒子效果生成器（硬编码实现）
      */
-    private static class DefaultParticleGenerator implements ParticleGenerator {
-        @Override
-        public void generateEffect(Location location) {
-            World world = location.getWorld();
-            if (world == null) return;
-            
-            Particle particle = Particle.FLAME;
-            int count = 100;
-            double radius = 1.5;
-            int duration = 20;
-            
-            new BukkitRunnable() {
-                int ticks = 0;
-                
-                @Override
-                public void run() {
-                    if (ticks >= duration) {
-                        cancel();
-                        return;
-                    }
-                    
-                    double progress = (double) ticks / duration;
-                    double height = Math.sin(progress * Math.PI) * 0.5;
-                    
-                    for (int i = 0; i < count; i++) {
-                        double angle = 2 * Math.PI * i / count;
-                        double x = radius * Math.cos(angle);
-                        double z = radius * Math.sin(angle);
-                        
-                        world.spawnParticle(
-                            particle, 
-                            location.getX() + x, 
-                            location.getY() + height, 
-                            location.getZ() + z, 
-                            1
-                        );
-                    }
-                    
-                    ticks++;
-                }
-            }.runTaskTimer(PartnerPlugin.getPlugin(PartnerPlugin.class), 0, 1);
+    static class DefaultParticleGenerator extends ShapeGenerator {
+        DefaultParticleGenerator() {
+            super(Particle.FLAME, ShapeCache.pulsingRing(100, 1.5, 20, 0.5), 20);
         }
     }
     
     /**
      * 螺旋粒子效果生成器（硬编码实现）
      */
-    private static class SpiralParticleGenerator implements ParticleGenerator {
-        @Override
-        public void generateEffect(Location location) {
-            World world = location.getWorld();
-            if (world == null) return;
-            
-            Particle particle = Particle.FLAME;
-            int points = 100;
-            int duration = 100;
-            double radius = 1.0;
-            double height = 2.0;
-            
-            new BukkitRunnable() {
-                int ticks = 0;
-                
-                @Override
-                public void run() {
-                    if (ticks >= duration) {
-                        cancel();
-                        return;
-                    }
-                    
-                    for (int i = 0; i < points; i++) {
-                        double progress = (double) i / points;
-                        double angle = 2 * Math.PI * (ticks / 10.0 + progress);
-                        double x = radius * Math.cos(angle);
-                        double z = radius * Math.sin(angle);
-                        double y = height * (progress - 0.5);
-                        
-                        world.spawnParticle(
-                            particle, 
-                            location.getX() + x, 
-                            location.getY() + y, 
-                            location.getZ() + z, 
-                            1
-                        );
-                    }
-                    
-                    ticks++;
-                }
-            }.runTaskTimer(PartnerPlugin.getPlugin(PartnerPlugin.class), 0, 1);
+    static class SpiralParticleGenerator extends ShapeGenerator {
+        SpiralParticleGenerator() {
+            super(Particle.FLAME, ShapeCache.spiral(100, 1.0, 2.0, 10), 100);
         }
     }
     
     /**
      * 圆形粒子效果生成器（硬编码实现）
      */
-    private static class CircleParticleGenerator implements ParticleGenerator {
-        @Override
-        public void generateEffect(Location location) {
-            World world = location.getWorld();
-            if (world == null) return;
-            
-            Particle particle = Particle.FLAME;
-            int count = 50;
-            double radius = 1.5;
-            int rings = 5;
-            int duration = 20;
-            
-            new BukkitRunnable() {
-                int ticks = 0;
-                
-                @Override
-                public void run() {
-                    if (ticks >= duration) {
-                        cancel();
-                        return;
-                    }
-                    
-                    for (int r = 0; r < rings; r++) {
-                        double height = (double) r / rings;
-                        for (int i = 0; i < count; i++) {
-                            double angle = 2 * Math.PI * i / count;
-                            double x = radius * Math.cos(angle);
-                            double z = radius * Math.sin(angle);
-                            
-                            world.spawnParticle(
-                                particle, 
-                                location.getX() + x, 
-                                location.getY() + height, 
-                                location.getZ() + z, 
-                                1
-                            );
-                        }
-                    }
-                    
-                    ticks++;
-                }
-            }.runTaskTimer(PartnerPlugin.getPlugin(PartnerPlugin.class), 0, 1);
+    static class CircleParticleGenerator extends ShapeGenerator {
+        CircleParticleGenerator() {
+            super(Particle.FLAME, ShapeCache.stackedRings(50, 1.5, 5), 20);
         }
     }
     
     /**
-     * 可配置粒子效果生成器
+     * 可配置粒子效果生成器（读取 particle-effect 配置节，未配置时不产生任何粒子）
      */
-    private static class ConfigurableParticleGenerator implements ParticleGenerator {
-        private final FileConfiguration config;
-        
-        public ConfigurableParticleGenerator(FileConfiguration config) {
-            this.config = config;
-        }
-        
-        @Override
-        public void generateEffect(Location location) {
-            ConfigurationSection effectConfig = config.getConfigurationSection("particle-effect");
-            if (effectConfig == null) return;
-            
-            final String particleName = effectConfig.getString("particle", "FLAME");
-            final int count = effectConfig.getInt("count", 100);
-            final double radius = effectConfig.getDouble("radius", 1.5);
-            final int duration = effectConfig.getInt("duration", 20);
-            final double heightMultiplier = effectConfig.getDouble("height-multiplier", 0.5);
-            final int pointsPerTick = effectConfig.getInt("points-per-tick", 10);
-            
-            Particle particle;
-            try {
-                particle = Particle.valueOf(particleName);
-            } catch (IllegalArgumentException e) {
-                particle = Particle.FLAME;
-            }
-            
-            final Particle finalParticle = particle;
-            World world = location.getWorld();
-            if (world == null) return;
-            
-            new BukkitRunnable() {
-                int ticks = 0;
-                int pointsGenerated = 0;
-                
-                @Override
-                public void run() {
-                    if (ticks >= duration) {
-                        cancel();
-                        return;
-                    }
-                    
-                    // 每tick生成指定数量的粒子
-                    for (int i = 0; i < pointsPerTick; i++) {
-                        if (pointsGenerated >= count) {
-                            pointsGenerated = 0;
-                            break;
-                        }
-                        
-                        double progress = (double) pointsGenerated / count;
-                        double angle = 2 * Math.PI * progress;
-                        double x = radius * Math.cos(angle);
-                        double z = radius * Math.sin(angle);
-                        double height = Math.sin(progress * Math.PI) * heightMultiplier;
-                        
-                        world.spawnParticle(
-                            finalParticle, 
-                            location.getX() + x, 
-                            location.getY() + height, 
-                            location.getZ() + z, 
-                            1
-                        );
-                        
-                        pointsGenerated++;
-                    }
-                    
-                    ticks++;
-                }
-            }.runTaskTimer(PartnerPlugin.getPlugin(PartnerPlugin.class), 0, 1);
+    static class ConfigurableParticleGenerator extends ShapeGenerator {
+        public ConfigurableParticleGenerator(PartnerConfig settings) {
+            super(settings.customParticle,
+                    ShapeCache.travellingArc(settings.customCount, settings.customRadius,
+                            settings.customHeightMultiplier, settings.customPointsPerTick),
+                    settings.customEffectEnabled ? settings.customDuration : 0);
         }
     }
 }
@@ -0,0 +1,66 @@
+package com.y4vyq.partnerplugin;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 伙伴登记表
+ * 每个主人对应一条不可变的 {@link PartnerInfo}，状态变化时整条替换；
+ * 读取只访问 ConcurrentHashMap，不加锁也不需要回到主线程，供聊天、计分板、网页面板等异步线程查询
+ */
+final class PartnerRegistry implements PartnerPlugin.PartnerService {
+
+    private final Map<UUID, PartnerInfo> records = new ConcurrentHashMap<>();
+    private final Collection<PartnerInfo> view = Collections.unmodifiableCollection(records.values());
+    private final TaskScheduler scheduler;
+
+    PartnerRegistry(TaskScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    void put(PartnerInfo info) {
+        records.put(info.getOwner(), info);
+    }
+
+    void setHidden(UUID owner, boolean hidden) {
+        records.computeIfPresent(owner, (key, info) -> info.withHidden(hidden));
+    }
+
+    void remove(UUID owner) {
+        records.remove(owner);
+    }
+
+    void clear() {
+        records.clear();
+    }
+
+    @Override
+    public boolean hasPartner(UUID owner) {
+        return records.containsKey(owner);
+    }
+
+    @Override
+    public PartnerInfo getPartner(UUID owner) {
+        return records.get(owner);
+    }
+
+    @Override
+    public int getRemainingSeconds(UUID owner) {
+        PartnerInfo info = records.get(owner);
+        if (info == null) return -1;
+        return Math.max(0, (info.expiryTick - scheduler.currentTick()) / 20);
+    }
+
+    @Override
+    public Collection<PartnerInfo> getPartners() {
+        return view;
+    }
+
+    @Override
+    public int getPartnerCount() {
+        return records.size();
+    }
+}
@@ -0,0 +1,339 @@
+package com.y4vyq.partnerplugin;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 伙伴状态存储引擎
+ * 每个玩家的伙伴状态以追加写入的日志记录（partners.journal），日志过长时压缩为快照（partners.dat）。
+ * 所有磁盘读写都在独立的 I/O 线程上完成，主线程只负责把变更放入队列
+ */
+final class PartnerStore {
+
+    private static final String SNAPSHOT_FILE = "partners.dat";
+    private static final String JOURNAL_FILE = "partners.journal";
+    // 日志行数超过该值且超过存活记录数两倍时压缩
+    private static final int COMPACT_MIN_RECORDS = 4096;
+
+    /**
+     * 单个玩家的伙伴状态（不可变）
+     */
+    static final class State {
+        final UUID owner;
+        final boolean hidden;
+        final String entityType;
+        final String name;
+        final int remainingSeconds;
+        final String effect;
+
+        State(UUID owner, boolean hidden, String entityType, String name, int remainingSeconds, String effect) {
+            this.owner = owner;
+            this.hidden = hidden;
+            this.entityType = entityType;
+            this.name = name == null ? "" : name;
+            this.remainingSeconds = remainingSeconds;
+            this.effect = effect == null ? "" : effect;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof State)) return false;
+            State other = (State) o;
+            return hidden == other.hidden
+                    && remainingSeconds == other.remainingSeconds
+                    && owner.equals(other.owner)
+                    && entityType.equals(other.entityType)
+                    && name.equals(other.name)
+                    && effect.equals(other.effect);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(owner, hidden, entityType, name, remainingSeconds, effect);
+        }
+    }
+
+    private final Logger logger;
+    private final File snapshotFile;
+    private final File journalFile;
+    private final ExecutorService io;
+
+    // 最近一次提交的状态，可在任意线程读写
+    private final Map<UUID, State> states = new ConcurrentHashMap<>();
+    // 加载期间被删除的玩家，恢复时不再加回
+    private final Set<UUID> removedDuringLoad = ConcurrentHashMap.newKeySet();
+    private volatile boolean loading;
+
+    // 待写入的记录与是否已安排写入任务
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    // 以下字段只在 I/O 线程访问
+    private final Map<UUID, String> persisted = new HashMap<>();
+    private BufferedWriter journal;
+    private int journalRecords;
+
+    PartnerStore(File dataFolder, Logger logger) {
+        this.logger = logger;
+        this.snapshotFile = new File(dataFolder, SNAPSHOT_FILE);
+        this.journalFile = new File(dataFolder, JOURNAL_FILE);
+        this.io = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PartnerPlugin-Store");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 异步读取快照与日志，完成后返回全部状态
+     * 返回的映射只在 I/O 线程构建，调用方应回到同步线程后再交给 {@link #restore(Map)}
+     */
+    CompletableFuture<Map<UUID, State>> load() {
+        loading = true;
+        return CompletableFuture.supplyAsync(() -> {
+            Map<UUID, State> loaded = new HashMap<>();
+            replay(snapshotFile, loaded);
+            replay(journalFile, loaded);
+            for (State state : loaded.values()) {
+                persisted.put(state.owner, encode(state));
+            }
+            return loaded;
+        }, io);
+    }
+
+    /**
+     * 用加载结果初始化内存视图，已经在加载期间写入或删除的状态优先
+     */
+    void restore(Map<UUID, State> loaded) {
+        for (State state : loaded.values()) {
+            if (removedDuringLoad.contains(state.owner)) continue;
+            states.putIfAbsent(state.owner, state);
+        }
+        loading = false;
+        removedDuringLoad.clear();
+    }
+
+    State get(UUID owner) {
+        return states.get(owner);
+    }
+
+    Map<UUID, State> getAll() {
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * 记录玩家的伙伴状态，内容未变化时不产生写入
+     */
+    void put(State state) {
+        if (loading) {
+            removedDuringLoad.remove(state.owner);
+        }
+        State previous = states.put(state.owner, state);
+        if (state.equals(previous)) return;
+        enqueue(encode(state));
+    }
+
+    /**
+     * 删除玩家的伙伴状态
+     */
+    void remove(UUID owner) {
+        // 加载期间内存中还没有已保存的状态，删除记录必须照常写入并阻止恢复
+        boolean existed = states.remove(owner) != null;
+        if (loading) {
+            removedDuringLoad.add(owner);
+        } else if (!existed) {
+            return;
+        }
+        enqueue("D\t" + owner);
+    }
+
+    /**
+     * 写完所有待写记录并关闭 I/O 线程，最多等待 timeoutMillis 毫秒
+     */
+    void close(long timeoutMillis) {
+        io.execute(this::drain);
+        io.execute(this::closeJournal);
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warning("伙伴数据未能在 " + timeoutMillis + "ms 内写完，部分状态可能丢失");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(String record) {
+        pending.add(record);
+        if (drainScheduled.compareAndSet(false, true) && !io.isShutdown()) {
+            try {
+                io.execute(() -> {
+                    drainScheduled.set(false);
+                    drain();
+                });
+            } catch (RejectedExecutionException e) {
+                // 检查之后 I/O 线程已关闭，记录留在队列中无法写入
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    // ================== I/O 线程 ================== //
+
+    private void drain() {
+        if (pending.isEmpty()) return;
+        try {
+            BufferedWriter writer = openJournal();
+            String record;
+            while ((record = pending.poll()) != null) {
+                writer.write(record);
+                writer.newLine();
+                journalRecords++;
+                apply(record, persisted);
+            }
+            writer.flush();
+
+            if (journalRecords > COMPACT_MIN_RECORDS && journalRecords > persisted.size() * 2) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "写入伙伴数据失败", e);
+        }
+    }
+
+    /**
+     * 把当前全部状态写成新快照并清空日志
+     */
+    private void compact() throws IOException {
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            for (String record : persisted.values()) {
+                writer.write(record);
+                writer.newLine();
+            }
+        }
+        Files.move(temp.toPath(), snapshotFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        closeJournal();
+        Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING).close();
+        journalRecords = 0;
+    }
+
+    private BufferedWriter openJournal() throws IOException {
+        if (journal == null) {
+            File folder = journalFile.getParentFile();
+            if (folder != null && !folder.exists()) {
+                folder.mkdirs();
+            }
+            journal = Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        return journal;
+    }
+
+    private void closeJournal() {
+        if (journal == null) return;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "关闭伙伴数据日志失败", e);
+        }
+        journal = null;
+    }
+
+    private void replay(File file, Map<UUID, State> target) {
+        if (!file.exists()) return;
+
+        int lines = 0;
+        int invalid = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                lines++;
+                if (!applyState(line, target)) {
+                    invalid++;
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "读取伙伴数据失败: " + file.getName(), e);
+        }
+        if (file == journalFile) {
+            journalRecords = lines;
+        }
+        if (invalid > 0) {
+            logger.warning(file.getName() + " 中有 " + invalid + " 条无效记录已被忽略");
+        }
+    }
+
+    // ================== 记录格式 ================== //
+    // P\t<主人>\t<隐藏 0/1>\t<实体类型>\t<剩余秒数>\t<效果>\t<名称 Base64>
+    // D\t<主人>
+
+    private static String encode(State state) {
+        return "P\t" + state.owner
+                + "\t" + (state.hidden ? '1' : '0')
+                + "\t" + state.entityType
+                + "\t" + state.remainingSeconds
+                + "\t" + state.effect
+                + "\t" + Base64.getEncoder().encodeToString(state.name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void apply(String record, Map<UUID, String> target) {
+        String[] parts = record.split("\t", 3);
+        UUID owner = UUID.fromString(parts[1]);
+        if (record.charAt(0) == 'D') {
+            target.remove(owner);
+        } else {
+            target.put(owner, record);
+        }
+    }
+
+    private static boolean applyState(String record, Map<UUID, State> target) {
+        try {
+            String[] parts = record.split("\t", -1);
+            UUID owner = UUID.fromString(parts[1]);
+            switch (parts[0]) {
+                case "D":
+                    target.remove(owner);
+                    return true;
+                case "P":
+                    String name = new String(Base64.getDecoder().decode(parts[6]), StandardCharsets.UTF_8);
+                    target.put(owner, new State(owner, "1".equals(parts[2]), parts[3], name,
+                            Integer.parseInt(parts[4]), parts[5]));
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.y4vyq.partnerplugin;
+
+/**
+ * 自适应粒子质量
+ * 按服务端每 tick 耗时(MSPT)的平滑值逐级调整粒子效果的细节：高于降级阈值降一级，低于恢复阈值升一级，
+ * 两个阈值之间保持不变；每次调整后至少保持 hold tick 才会再次调整，避免在阈值附近来回切换。
+ * 耗时只在服务端 tick 结束的线程记录，当前等级可在任意线程读取
+ */
+final class QualityGovernor {
+
+    /**
+     * 质量等级：每帧保留的点比例、效果时长比例、每隔几帧发送一次
+     */
+    enum Level {
+        FULL("full", 1.0, 1.0, 1),
+        REDUCED("reduced", 0.5, 1.0, 1),
+        LOW("low", 0.25, 0.5, 2),
+        MINIMAL("minimal", 0.1, 0.25, 4);
+
+        final String label;
+        final double pointScale;
+        final double durationScale;
+        final int frameStride;
+
+        Level(String label, double pointScale, double durationScale, int frameStride) {
+            this.label = label;
+            this.pointScale = pointScale;
+            this.durationScale = durationScale;
+            this.frameStride = frameStride;
+        }
+
+        /**
+         * 一帧 points 个点中实际发送的点数，非空帧至少保留 1 个点
+         */
+        int points(int points) {
+            return points <= 0 ? 0 : Math.max(1, (int) Math.ceil(points * pointScale));
+        }
+
+        /**
+         * 缩短后的效果时长(tick)
+         */
+        int duration(int duration) {
+            return duration <= 0 ? duration : Math.max(1, (int) Math.round(duration * durationScale));
+        }
+
+        /**
+         * 第 frame 帧是否发送，跳过的帧只推进不发送
+         */
+        boolean sends(int frame) {
+            return frame % frameStride == 0;
+        }
+    }
+
+    // 平滑系数，约等于最近 20 tick 的加权平均
+    private static final double SMOOTHING = 0.1;
+    private static final Level[] LEVELS = Level.values();
+
+    private volatile Level level = Level.FULL;
+    private volatile double smoothedMspt;
+    private volatile boolean enabled;
+    private volatile double degradeMspt;
+    private volatile double restoreMspt;
+    private volatile int holdTicks;
+    // 距上次调整的 tick 数，只在记录线程访问
+    private int sinceChange;
+
+    void configure(PartnerConfig settings) {
+        degradeMspt = settings.qualityDegradeMspt;
+        restoreMspt = settings.qualityRestoreMspt;
+        holdTicks = settings.qualityHoldTicks;
+        enabled = settings.adaptiveQuality;
+        if (!enabled) {
+            level = Level.FULL;
+        }
+    }
+
+    /**
+     * 记录刚结束的一个 tick 的耗时(毫秒)，必要时调整等级
+     */
+    void record(double mspt) {
+        double smoothed = smoothedMspt == 0 ? mspt : smoothedMspt + (mspt - smoothedMspt) * SMOOTHING;
+        smoothedMspt = smoothed;
+        if (!enabled || ++sinceChange < holdTicks) return;
+
+        int current = level.ordinal();
+        if (smoothed > degradeMspt && current < LEVELS.length - 1) {
+            level = LEVELS[current + 1];
+            sinceChange = 0;
+        } else if (smoothed < restoreMspt && current > 0) {
+            level = LEVELS[current - 1];
+            sinceChange = 0;
+        }
+    }
+
+    Level getLevel() {
+        return level;
+    }
+
+    double getSmoothedMspt() {
+        return smoothedMspt;
+    }
+}
@@ -0,0 +1,242 @@
+package com.y4vyq.partnerplugin;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 粒子形状缓存
+ * 将 (形状, 点数, 半径, 高度曲线) 一次性预计算为基本类型偏移数组，
+ * 所有召唤、所有重载共用同一份结果，生成器每 tick 只需遍历数组
+ */
+final class ShapeCache {
+
+    private static final Map<String, Shape> CACHE = new ConcurrentHashMap<>();
+    private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+
+    private ShapeCache() {
+    }
+
+    /**
+     * 预计算后的形状
+     * 第 f 帧的点位于下标区间 [start(f), end(f))，坐标为相对原点的偏移
+     */
+    static final class Shape {
+        final double[] x;
+        final double[] y;
+        final double[] z;
+        private final int[] frameStart;
+
+        private Shape(double[] x, double[] y, double[] z, int[] frameStart) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.frameStart = frameStart;
+        }
+
+        int frameCount() {
+            return frameStart.length - 1;
+        }
+
+        int start(int frame) {
+            return frameStart[frame];
+        }
+
+        int end(int frame) {
+            return frameStart[frame + 1];
+        }
+
+        int pointCount() {
+            return x.length;
+        }
+    }
+
+    /**
+     * 单个圆环，高度按 sin(进度 * π) 起伏（默认生成器）
+     */
+    static Shape pulsingRing(int points, double radius, int duration, double heightMultiplier) {
+        String key = "pulsing-ring:" + points + ":" + radius + ":" + duration + ":" + heightMultiplier;
+        return CACHE.computeIfAbsent(key, k -> {
+            int frames = Math.max(1, duration);
+            Builder builder = new Builder(frames, points * frames);
+            double[] cos = cosTable(points);
+            double[] sin = sinTable(points);
+            for (int f = 0; f < frames; f++) {
+                double height = Math.sin((double) f / frames * Math.PI) * heightMultiplier;
+                for (int i = 0; i < points; i++) {
+                    builder.add(radius * cos[i], height, radius * sin[i]);
+                }
+                builder.endFrame();
+            }
+            return builder.build();
+        });
+    }
+
+    /**
+     * 旋转螺旋，每 period tick 转一整圈（螺旋生成器）
+     */
+    static Shape spiral(int points, double radius, double height, int period) {
+        String key = "spiral:" + points + ":" + radius + ":" + height + ":" + period;
+        return CACHE.computeIfAbsent(key, k -> {
+            int frames = Math.max(1, period);
+            Builder builder = new Builder(frames, points * frames);
+            for (int f = 0; f < frames; f++) {
+                double phase = (double) f / frames;
+                for (int i = 0; i < points; i++) {
+                    double progress = (double) i / points;
+                    double angle = 2 * Math.PI * (phase + progress);
+                    builder.add(radius * Math.cos(angle), height * (progress - 0.5), radius * Math.sin(angle));
+                }
+                builder.endFrame();
+            }
+            return builder.build();
+        });
+    }
+
+    /**
+     * 等间距叠放的多层圆环，每帧相同（圆形生成器）
+     */
+    static Shape stackedRings(int points, double radius, int rings) {
+        String key = "stacked-rings:" + points + ":" + radius + ":" + rings;
+        return CACHE.computeIfAbsent(key, k -> {
+            Builder builder = new Builder(1, points * rings);
+            double[] cos = cosTable(points);
+            double[] sin = sinTable(points);
+            for (int r = 0; r < rings; r++) {
+                double height = (double) r / rings;
+                for (int i = 0; i < points; i++) {
+                    builder.add(radius * cos[i], height, radius * sin[i]);
+                }
+            }
+            builder.endFrame();
+            return builder.build();
+        });
+    }
+
+    /**
+     * 沿圆环逐步绘制的拱形，每 tick 画 pointsPerTick 个点，画满一圈后重新开始（可配置生成器）
+     */
+    static Shape travellingArc(int count, double radius, double heightMultiplier, int pointsPerTick) {
+        String key = "travelling-arc:" + count + ":" + radius + ":" + heightMultiplier + ":" + pointsPerTick;
+        return CACHE.computeIfAbsent(key, k -> {
+            int perTick = Math.max(1, pointsPerTick);
+            int total = Math.max(0, count);
+            // 一个周期为画满一圈所需的帧数；恰好整除时计数器要多空转一帧才会复位
+            int frames = (total + perTick - 1) / perTick + (total % perTick == 0 ? 1 : 0);
+            Builder builder = new Builder(frames, total);
+            int generated = 0;
+            for (int f = 0; f < frames; f++) {
+                for (int i = 0; i < perTick && generated < total; i++) {
+                    double progress = (double) generated / total;
+                    double angle = 2 * Math.PI * progress;
+                    double height = Math.sin(progress * Math.PI) * heightMultiplier;
+                    builder.add(radius * Math.cos(angle), height, radius * Math.sin(angle));
+                    generated++;
+                }
+                builder.endFrame();
+            }
+            return builder.build();
+        });
+    }
+
+    /**
+     * 单位圆环：半径 1、位于原点高度的 points 个等分点（关键帧效果缩放、旋转后使用）
+     */
+    static Shape unitRing(int points) {
+        String key = "unit-ring:" + points;
+        return CACHE.computeIfAbsent(key, k -> {
+            Builder builder = new Builder(1, points);
+            double[] cos = cosTable(points);
+            double[] sin = sinTable(points);
+            for (int i = 0; i < points; i++) {
+                builder.add(cos[i], 0, sin[i]);
+            }
+            builder.endFrame();
+            return builder.build();
+        });
+    }
+
+    /**
+     * 单位螺旋：半径 1，绕 turns 圈从高度 -0.5 上升到 0.5（关键帧效果缩放、旋转后使用）
+     */
+    static Shape unitHelix(int points, double turns) {
+        String key = "unit-helix:" + points + ":" + turns;
+        return CACHE.computeIfAbsent(key, k -> {
+            Builder builder = new Builder(1, points);
+            for (int i = 0; i < points; i++) {
+                double progress = (double) i / points;
+                double angle = 2 * Math.PI * turns * progress;
+                builder.add(Math.cos(angle), progress - 0.5, Math.sin(angle));
+            }
+            builder.endFrame();
+            return builder.build();
+        });
+    }
+
+    /**
+     * 单位球面上均匀分布的 points 个点（斐波那契球，关键帧效果缩放、旋转后使用）
+     */
+    static Shape unitSphere(int points) {
+        String key = "unit-sphere:" + points;
+        return CACHE.computeIfAbsent(key, k -> {
+            Builder builder = new Builder(1, points);
+            for (int i = 0; i < points; i++) {
+                double vertical = 1 - 2 * (i + 0.5) / points;
+                double horizontal = Math.sqrt(1 - vertical * vertical);
+                double angle = GOLDEN_ANGLE * i;
+                builder.add(horizontal * Math.cos(angle), vertical, horizontal * Math.sin(angle));
+            }
+            builder.endFrame();
+            return builder.build();
+        });
+    }
+
+    private static double[] cosTable(int points) {
+        double[] table = new double[points];
+        for (int i = 0; i < points; i++) {
+            table[i] = Math.cos(2 * Math.PI * i / points);
+        }
+        return table;
+    }
+
+    private static double[] sinTable(int points) {
+        double[] table = new double[points];
+        for (int i = 0; i < points; i++) {
+            table[i] = Math.sin(2 * Math.PI * i / points);
+        }
+        return table;
+    }
+
+    /**
+     * 按帧追加点的构建器
+     */
+    private static final class Builder {
+        private final double[] x;
+        private final double[] y;
+        private final double[] z;
+        private final int[] frameStart;
+        private int size;
+        private int frame;
+
+        Builder(int frames, int capacity) {
+            this.x = new double[capacity];
+            this.y = new double[capacity];
+            this.z = new double[capacity];
+            this.frameStart = new int[frames + 1];
+        }
+
+        void add(double px, double py, double pz) {
+            x[size] = px;
+            y[size] = py;
+            z[size] = pz;
+            size++;
+        }
+
+        void endFrame() {
+            frameStart[++frame] = size;
+        }
+
+        Shape build() {
+            return new Shape(x, y, z, frameStart);
+        }
+    }
+}
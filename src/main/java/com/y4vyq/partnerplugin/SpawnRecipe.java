@@ -0,0 +1,153 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Ageable;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Fox;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Tameable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * 预编译的伙伴生成配方
+ * 每种实体类型只编译一次：实体类、属性、驯服/信任方式都提前确定，
+ * 生成时通过 World.spawn(Location, Class, Consumer) 在实体加入世界之前一次性配置完毕，
+ * 避免生成后逐个 setter 触发多次元数据同步
+ */
+final class SpawnRecipe {
+
+    // 部分服务端提供的 Fox#addTrustedUUID，不存在时退回 setFirstTrustedPlayer
+    private static final MethodHandle FOX_ADD_TRUSTED = findFoxAddTrusted();
+
+    private final Class<? extends LivingEntity> entityClass;
+    private final PartnerConfig settings;
+    private final boolean fox;
+    private final boolean tameable;
+    private final boolean ageable;
+
+    private SpawnRecipe(Class<? extends LivingEntity> entityClass, PartnerConfig settings) {
+        this.entityClass = entityClass;
+        this.settings = settings;
+        this.fox = Fox.class.isAssignableFrom(entityClass);
+        this.tameable = !fox && Tameable.class.isAssignableFrom(entityClass);
+        this.ageable = Ageable.class.isAssignableFrom(entityClass);
+    }
+
+    /**
+     * 为实体类型编译配方，类型不是可生成的生物时返回 null
+     */
+    static SpawnRecipe compile(EntityType type, PartnerConfig settings) {
+        Class<? extends Entity> entityClass = type.getEntityClass();
+        if (entityClass == null || !type.isSpawnable() || !LivingEntity.class.isAssignableFrom(entityClass)) {
+            return null;
+        }
+        return new SpawnRecipe(entityClass.asSubclass(LivingEntity.class), settings);
+    }
+
+    /**
+     * 在指定位置生成 owner 的伙伴，实体加入世界时已完成全部配置
+     */
+    LivingEntity spawn(Location location, Player owner, String name, PartnerIndex index) {
+        World world = location.getWorld();
+        Consumer<LivingEntity> setup = entity -> {
+            entity.setCustomName(name);
+            entity.setCustomNameVisible(settings.showName);
+            entity.setInvulnerable(true);
+            // 伙伴状态由 PartnerStore 保存，实体不随区块写入存档
+            entity.setPersistent(false);
+            index.tag(entity, owner.getUniqueId());
+            applyAttributes(entity);
+            applyOwnership(entity, owner);
+        };
+        return world.spawn(location, entityClass, setup);
+    }
+
+    /**
+     * 软隐藏：保留实体，对所有玩家不可见并关闭 AI、碰撞与声音
+     */
+    void park(LivingEntity entity) {
+        entity.setVisibleByDefault(false);
+        entity.setAI(false);
+        entity.setCollidable(false);
+        entity.setSilent(true);
+    }
+
+    /**
+     * 取消软隐藏，恢复配置中的 AI 与声音设置
+     */
+    void unpark(LivingEntity entity) {
+        entity.setAI(settings.ai == null || settings.ai);
+        entity.setCollidable(true);
+        entity.setSilent(settings.silent != null && settings.silent);
+        entity.setVisibleByDefault(true);
+    }
+
+    private void applyAttributes(LivingEntity entity) {
+        // 生命值
+        if (settings.health != null) {
+            entity.setHealth(Math.min(settings.health, entity.getMaxHealth()));
+        }
+
+        // AI控制
+        if (settings.ai != null) {
+            entity.setAI(settings.ai);
+        }
+
+        // 发光效果
+        if (settings.glowing != null) {
+            entity.setGlowing(settings.glowing);
+        }
+
+        // 静音
+        if (settings.silent != null) {
+            entity.setSilent(settings.silent);
+        }
+
+        // 年龄设置
+        if (ageable && settings.adult != null) {
+            Ageable age = (Ageable) entity;
+            if (settings.adult) {
+                age.setAdult();
+            } else {
+                age.setBaby();
+            }
+        }
+    }
+
+    /**
+     * 狐狸设置信任对象，其他可驯服动物标记为已驯服
+     */
+    private void applyOwnership(LivingEntity entity, Player owner) {
+        if (fox) {
+            Fox foxEntity = (Fox) entity;
+            if (FOX_ADD_TRUSTED != null) {
+                try {
+                    FOX_ADD_TRUSTED.invoke(foxEntity, owner.getUniqueId());
+                    return;
+                } catch (Throwable ignored) {
+                    // 退回标准 API
+                }
+            }
+            foxEntity.setFirstTrustedPlayer(owner);
+        } else if (tameable) {
+            Tameable tame = (Tameable) entity;
+            tame.setTamed(true);
+            tame.setOwner(owner);
+        }
+    }
+
+    private static MethodHandle findFoxAddTrusted() {
+        try {
+            return MethodHandles.publicLookup().unreflect(Fox.class.getMethod("addTrustedUUID", UUID.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
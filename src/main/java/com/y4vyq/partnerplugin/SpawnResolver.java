@@ -0,0 +1,211 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Waterlogged;
+import org.bukkit.util.Vector;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 伙伴生成位置查找
+ * 以主人视线水平方向前方 2 格为首选点，在周围的方块柱中寻找脚下为实心方块、身体与头部可通行且不在液体中的位置
+ * （避开水时含水方块如海草、含水台阶也视为水）。
+ * 所需区块通过 getChunkAtAsync 异步加载，在区块所属线程拍下快照后转到异步线程搜索，不会同步加载区块，
+ * 也不在主线程逐格读取方块。找不到合适位置或查找失败时退回主人所在位置。
+ * 搜索结束到生成之间区块可能已被卸载，在结果位置生成实体的调用方应通过 {@link #runLoaded} 执行，
+ * 它在所属线程重新确认区块已加载，否则再次异步加载后重试；用 teleportAsync 传送的调用方无需如此，传送会按需加载
+ */
+final class SpawnResolver {
+
+    // 首选点距主人的水平距离
+    private static final double PREFERRED_DISTANCE = 2.0;
+    // 以首选点为中心的水平搜索半径与上下搜索范围(格)
+    private static final int SEARCH_RADIUS = 3;
+    private static final int VERTICAL_RANGE = 4;
+
+    // 站上去或进入会受伤的方块
+    private static final Set<Material> HAZARDS = EnumSet.of(Material.LAVA, Material.FIRE, Material.SOUL_FIRE,
+            Material.MAGMA_BLOCK, Material.CACTUS, Material.CAMPFIRE, Material.SOUL_CAMPFIRE,
+            Material.SWEET_BERRY_BUSH, Material.POWDER_SNOW, Material.WITHER_ROSE);
+
+    // 按到首选点的距离排序的水平偏移 {dx, dz}
+    private static final int[][] COLUMNS = columns();
+    // 相对起始高度的搜索顺序：0, +1, -1, +2, -2 ...
+    private static final int[] LEVELS = levels();
+
+    private final TaskScheduler scheduler;
+    private final Executor async;
+    private final Logger logger;
+
+    SpawnResolver(TaskScheduler scheduler, Logger logger) {
+        this.scheduler = scheduler;
+        this.async = scheduler::runAsync;
+        this.logger = logger;
+    }
+
+    /**
+     * 查找 origin(主人位置)附近的安全生成位置，应在 origin 所属线程调用
+     */
+    CompletableFuture<Location> resolve(Location origin, boolean avoidWater) {
+        World world = origin.getWorld();
+        Vector direction = origin.getDirection().setY(0);
+        if (direction.lengthSquared() < 1.0E-4) {
+            direction = new Vector(0, 0, 1);
+        }
+        direction.normalize().multiply(PREFERRED_DISTANCE);
+
+        int x = (int) Math.floor(origin.getX() + direction.getX());
+        int z = (int) Math.floor(origin.getZ() + direction.getZ());
+        Area area = new Area(world, origin, x, z, avoidWater);
+
+        List<CompletableFuture<?>> loads = new ArrayList<>(area.snapshots.length);
+        for (int cx = area.minChunkX; cx <= area.maxChunkX; cx++) {
+            for (int cz = area.minChunkZ; cz <= area.maxChunkZ; cz++) {
+                int index = area.index(cx, cz);
+                // 在完成加载的线程(区块所属线程)上拍快照，之后的读取与区块本身无关
+                loads.add(world.getChunkAtAsync(cx, cz).thenAccept(chunk ->
+                        area.snapshots[index] = chunk.getChunkSnapshot(false, false, false)));
+            }
+        }
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0]))
+                .thenApplyAsync(ignored -> area.search(), async)
+                .exceptionally(error -> {
+                    logger.log(Level.WARNING, "查找伙伴生成位置失败，使用主人所在位置", error);
+                    return origin.clone();
+                });
+    }
+
+    /**
+     * 在 location 所属线程执行 task，执行时其所在区块一定已加载；
+     * 区块已被卸载时先异步加载，加载完成后重新调度并再次确认
+     */
+    void runLoaded(Location location, Runnable task) {
+        World world = location.getWorld();
+        int chunkX = location.getBlockX() >> 4;
+        int chunkZ = location.getBlockZ() >> 4;
+        scheduler.runAt(location, () -> {
+            if (world.isChunkLoaded(chunkX, chunkZ)) {
+                task.run();
+            } else {
+                world.getChunkAtAsync(chunkX, chunkZ).thenAccept(chunk -> runLoaded(location, task));
+            }
+        });
+    }
+
+    /**
+     * 一次查找覆盖的区块快照与搜索参数
+     */
+    private static final class Area {
+        final World world;
+        final Location origin;
+        final int x;
+        final int z;
+        final int minY;
+        final int maxY;
+        final int startY;
+        final boolean avoidWater;
+        final int minChunkX;
+        final int minChunkZ;
+        final int maxChunkX;
+        final int maxChunkZ;
+        final ChunkSnapshot[] snapshots;
+
+        Area(World world, Location origin, int x, int z, boolean avoidWater) {
+            this.world = world;
+            this.origin = origin.clone();
+            this.x = x;
+            this.z = z;
+            this.avoidWater = avoidWater;
+            // 脚下与头顶各需要一格
+            minY = world.getMinHeight() + 1;
+            maxY = world.getMaxHeight() - 2;
+            startY = origin.getBlockY();
+            minChunkX = (x - SEARCH_RADIUS) >> 4;
+            minChunkZ = (z - SEARCH_RADIUS) >> 4;
+            maxChunkX = (x + SEARCH_RADIUS) >> 4;
+            maxChunkZ = (z + SEARCH_RADIUS) >> 4;
+            snapshots = new ChunkSnapshot[(maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1)];
+        }
+
+        int index(int chunkX, int chunkZ) {
+            return (chunkX - minChunkX) * (maxChunkZ - minChunkZ + 1) + (chunkZ - minChunkZ);
+        }
+
+        /**
+         * 按距离首选点由近到远、高度由近到远的顺序返回第一个可站立的位置
+         */
+        Location search() {
+            for (int[] column : COLUMNS) {
+                int bx = x + column[0];
+                int bz = z + column[1];
+                ChunkSnapshot snapshot = snapshots[index(bx >> 4, bz >> 4)];
+                int lx = bx & 15;
+                int lz = bz & 15;
+                for (int level : LEVELS) {
+                    int y = startY + level;
+                    if (y < minY || y > maxY) continue;
+                    if (standable(snapshot, lx, y, lz)) {
+                        Location found = new Location(world, bx + 0.5, y, bz + 0.5);
+                        // 面向主人
+                        found.setYaw(origin.getYaw() + 180);
+                        return found;
+                    }
+                }
+            }
+            return origin;
+        }
+
+        private boolean standable(ChunkSnapshot snapshot, int x, int y, int z) {
+            Material below = snapshot.getBlockType(x, y - 1, z);
+            return below.isSolid() && !HAZARDS.contains(below)
+                    && passable(snapshot, x, y, z)
+                    && passable(snapshot, x, y + 1, z);
+        }
+
+        private boolean passable(ChunkSnapshot snapshot, int x, int y, int z) {
+            Material type = snapshot.getBlockType(x, y, z);
+            if (type.isSolid() || HAZARDS.contains(type)) return false;
+            if (!avoidWater || type == Material.AIR) return true;
+            if (type == Material.WATER || type == Material.BUBBLE_COLUMN) return false;
+            // 海草、海带等水生植物与含水的非实心方块
+            BlockData data = snapshot.getBlockData(x, y, z);
+            return !(data instanceof Waterlogged && ((Waterlogged) data).isWaterlogged())
+                    && type != Material.SEAGRASS && type != Material.TALL_SEAGRASS
+                    && type != Material.KELP && type != Material.KELP_PLANT;
+        }
+    }
+
+    private static int[][] columns() {
+        List<int[]> columns = new ArrayList<>();
+        for (int dx = -SEARCH_RADIUS; dx <= SEARCH_RADIUS; dx++) {
+            for (int dz = -SEARCH_RADIUS; dz <= SEARCH_RADIUS; dz++) {
+                if (dx * dx + dz * dz <= SEARCH_RADIUS * SEARCH_RADIUS) {
+                    columns.add(new int[]{dx, dz});
+                }
+            }
+        }
+        columns.sort(Comparator.comparingInt(column -> column[0] * column[0] + column[1] * column[1]));
+        return columns.toArray(new int[0][]);
+    }
+
+    private static int[] levels() {
+        int[] levels = new int[VERTICAL_RANGE * 2 + 1];
+        for (int i = 1; i <= VERTICAL_RANGE; i++) {
+            levels[2 * i - 1] = i;
+            levels[2 * i] = -i;
+        }
+        return levels;
+    }
+}
@@ -0,0 +1,79 @@
+package com.y4vyq.partnerplugin;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * 插件内部的调度抽象
+ * 普通服务端上所有任务都在主线程执行；区域多线程服务端（Folia）上，
+ * 涉及实体的任务交给实体所属区域的调度器，涉及位置的任务交给该位置所属区域，
+ * 与具体区域无关的全局任务在全局区域线程执行。
+ * 插件通过 {@link #create(Plugin)} 按运行环境选择实现，也可以传入自定义实现（例如多线程的模拟调度器）
+ */
+interface TaskScheduler {
+
+    /**
+     * 可取消的已安排任务
+     */
+    interface Task {
+        void cancel();
+    }
+
+    /**
+     * 当前服务端是否按区域多线程运行
+     */
+    boolean isRegionized();
+
+    /**
+     * 全局时钟(tick)，在任何线程都可以读取
+     */
+    int currentTick();
+
+    /**
+     * 启动调度器（插件启用后调用）
+     */
+    void start();
+
+    /**
+     * 取消本插件安排的所有任务
+     */
+    void shutdown();
+
+    /**
+     * 在全局线程的下一个 tick 执行
+     */
+    void run(Runnable task);
+
+    /**
+     * 在全局线程重复执行
+     */
+    Task runRepeating(Runnable task, long delay, long period);
+
+    /**
+     * 在异步线程执行
+     */
+    void runAsync(Runnable task);
+
+    /**
+     * 在拥有该位置的线程执行，当前线程已拥有时立即执行
+     */
+    void runAt(Location location, Runnable task);
+
+    /**
+     * 在拥有该位置的线程重复执行
+     */
+    Task runAtRepeating(Location location, Runnable task, long delay, long period);
+
+    /**
+     * 在拥有该实体的线程执行，当前线程已拥有时立即执行；实体已被移除时任务被丢弃
+     */
+    void runFor(Entity entity, Runnable task);
+
+    /**
+     * 按运行环境创建调度器
+     */
+    static TaskScheduler create(Plugin plugin) {
+        return FoliaTaskScheduler.isSupported() ? new FoliaTaskScheduler(plugin) : new BukkitTaskScheduler(plugin);
+    }
+}